@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A doubly-linked list of elements that carry their own link pointers, where a
+ * subclass chooses which of the element's pointers are used. This allows an
+ * element to be a member of multiple deques at once, such as one ordered by
+ * access and another by write, without allocating a wrapper for each. It is
+ * not thread-safe and null elements are prohibited.
+ * <p>
+ * Unlike {@link LinkedDeque} this provides only the operations that the map
+ * requires, and an element that is not in the deque may be safely removed.
+ *
+ * @param <E> the type of elements held in this collection
+ */
+@NotThreadSafe
+abstract class AbstractLinkedDeque<E> {
+
+  /**
+   * Pointer to first node.
+   * Invariant: (first == null && last == null) ||
+   *            (getPrevious(first) == null)
+   */
+  E first;
+
+  /**
+   * Pointer to last node.
+   * Invariant: (first == null && last == null) ||
+   *            (getNext(last) == null)
+   */
+  E last;
+
+  /** Retrieves the previous element or <tt>null</tt> if it is the first. */
+  abstract E getPrevious(E e);
+
+  /** Sets the previous element or <tt>null</tt> if there is no link. */
+  abstract void setPrevious(E e, E prev);
+
+  /** Retrieves the next element or <tt>null</tt> if it is the last. */
+  abstract E getNext(E e);
+
+  /** Sets the next element or <tt>null</tt> if there is no link. */
+  abstract void setNext(E e, E next);
+
+  /** Returns if the deque contains no elements. */
+  boolean isEmpty() {
+    return (first == null);
+  }
+
+  /** Returns if the element is linked into this deque. */
+  boolean contains(E e) {
+    return (getPrevious(e) != null) || (getNext(e) != null) || (e == first);
+  }
+
+  /** Retrieves, but does not remove, the first element or <tt>null</tt>. */
+  E peekFirst() {
+    return first;
+  }
+
+  /** Links the element to the back of the deque. */
+  void add(E e) {
+    final E l = last;
+    last = e;
+    if (l == null) {
+      first = e;
+    } else {
+      setNext(l, e);
+      setPrevious(e, l);
+    }
+  }
+
+  /**
+   * Unlinks the element if it is in the deque.
+   *
+   * @param e the element to remove
+   * @return if the element was removed
+   */
+  boolean remove(E e) {
+    if (!contains(e)) {
+      return false;
+    }
+
+    final E prev = getPrevious(e);
+    final E next = getNext(e);
+    if (prev == null) {
+      first = next;
+    } else {
+      setNext(prev, next);
+      setPrevious(e, null);
+    }
+    if (next == null) {
+      last = prev;
+    } else {
+      setPrevious(next, prev);
+      setNext(e, null);
+    }
+    return true;
+  }
+
+  /** Moves the element to the back of the deque if it is a member. */
+  void moveToBack(E e) {
+    if ((e != last) && remove(e)) {
+      add(e);
+    }
+  }
+
+  /** Unlinks all of the elements. */
+  void clear() {
+    E e = first;
+    while (e != null) {
+      final E next = getNext(e);
+      setPrevious(e, null);
+      setNext(e, null);
+      e = next;
+    }
+    first = last = null;
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.ConcatenatedIterator;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Node;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Region;
+
+/**
+ * The Adaptive Replacement Cache policy, which balances between recency and
+ * frequency by tuning itself to the workload.
+ * <p>
+ * The resident entries are split between <tt>T1</tt>, for entries seen once
+ * recently, and <tt>T2</tt>, for entries seen at least twice. The keys of
+ * evicted entries are remembered in the ghost lists <tt>B1</tt> and
+ * <tt>B2</tt>. A miss on a key in <tt>B1</tt> shows that <tt>T1</tt> was too
+ * small, so the target size of <tt>T1</tt> grows, while a miss on a key in
+ * <tt>B2</tt> shrinks it in favor of <tt>T2</tt>. The ghost lists are bounded
+ * by the capacity.
+ *
+ * @param <K> the type of keys maintained by the map
+ * @param <V> the type of mapped values
+ * @see <a href="http://www.usenix.org/event/fast03/tech/full_papers/megiddo/megiddo.pdf">
+ *      ARC: A Self-Tuning, Low Overhead Replacement Cache</a>
+ */
+@NotThreadSafe
+final class ArcPolicy<K, V> implements EvictionPolicy<K, V>, EvictionPolicy.Adaptive {
+
+  /*
+   * The resident entries of T1 are tagged as being in the probation region
+   * and those of T2 as being in the protected region. The sizes are weighted,
+   * so an adaptation moves the target by a multiple of the entry's weight. The
+   * ghost lists are insertion ordered maps from a key to its weight, where the
+   * eldest key is discarded first.
+   */
+
+  final LinkedDeque<Node<K, V>> t1;
+  final LinkedDeque<Node<K, V>> t2;
+  final LinkedHashMap<K, Integer> b1;
+  final LinkedHashMap<K, Integer> b2;
+
+  long capacity;
+  long t1Size;
+  long t2Size;
+  long b1Size;
+  long b2Size;
+
+  // Written under the eviction lock and read without it
+  volatile long target;
+
+  ArcPolicy() {
+    t1 = new LinkedDeque<Node<K, V>>();
+    t2 = new LinkedDeque<Node<K, V>>();
+    b1 = new LinkedHashMap<K, Integer>();
+    b2 = new LinkedHashMap<K, Integer>();
+  }
+
+  @Override
+  public long adaptationTarget() {
+    return target;
+  }
+
+  @Override
+  public void setCapacity(long capacity) {
+    this.capacity = capacity;
+    target = Math.min(target, capacity);
+    trimGhosts();
+  }
+
+  /**
+   * Adds the entry to <tt>T1</tt>, unless its key is remembered by a ghost
+   * list in which case the target is adapted and the entry is added to
+   * <tt>T2</tt>.
+   */
+  @Override
+  public void onAdd(Entry<K, V> entry, int weight) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    node.policyWeight = weight;
+
+    final Integer b1Weight = b1.remove(node.key);
+    if (b1Weight != null) {
+      final long delta = Math.max(1, b2Size / b1Size) * weight;
+      b1Size -= b1Weight;
+      target = Math.min(capacity, target + delta);
+      link(node, Region.PROTECTED);
+      return;
+    }
+
+    final Integer b2Weight = b2.remove(node.key);
+    if (b2Weight != null) {
+      final long delta = Math.max(1, b1Size / b2Size) * weight;
+      b2Size -= b2Weight;
+      target = Math.max(0, target - delta);
+      link(node, Region.PROTECTED);
+      return;
+    }
+
+    link(node, Region.PROBATION);
+    trimGhosts();
+  }
+
+  /** Moves the entry to the most recently used position of <tt>T2</tt>. */
+  @Override
+  public void onAccess(Entry<K, V> entry) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    if (node.region == Region.PROTECTED) {
+      t2.moveToBack(node);
+    } else if (node.region == Region.PROBATION) {
+      unlink(node);
+      link(node, Region.PROTECTED);
+    }
+  }
+
+  @Override
+  public void onUpdate(Entry<K, V> entry, int weightDifference) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    final Region region = node.region;
+    if (region != null) {
+      unlink(node);
+      node.policyWeight += weightDifference;
+      link(node, region);
+    }
+    onAccess(node);
+  }
+
+  @Override
+  public void onRemove(Entry<K, V> entry) {
+    unlink((Node<K, V>) entry);
+  }
+
+  /**
+   * Evicts the least recently used entry of <tt>T1</tt> if it exceeds the
+   * target, or otherwise of <tt>T2</tt>, and remembers its key in the
+   * corresponding ghost list.
+   */
+  @Override
+  public Node<K, V> selectVictim() {
+    final boolean fromT1 = !t1.isEmpty() && ((t1Size > target) || t2.isEmpty());
+    final Node<K, V> victim = fromT1 ? t1.peekFirst() : t2.peekFirst();
+    if (victim == null) {
+      return null;
+    }
+    unlink(victim);
+
+    // A replaced entry with the same key may have been remembered already
+    forget(victim.key);
+    if (fromT1) {
+      b1.put(victim.key, victim.policyWeight);
+      b1Size += victim.policyWeight;
+    } else {
+      b2.put(victim.key, victim.policyWeight);
+      b2Size += victim.policyWeight;
+    }
+    trimGhosts();
+    return victim;
+  }
+
+  /** Discards the ghost entries that exceed the bounds of the ghost lists. */
+  void trimGhosts() {
+    while ((t1Size + b1Size > capacity) && !b1.isEmpty()) {
+      b1Size -= removeEldest(b1);
+    }
+    while (b1Size + b2Size > capacity) {
+      if (b2.isEmpty()) {
+        b1Size -= removeEldest(b1);
+      } else {
+        b2Size -= removeEldest(b2);
+      }
+    }
+  }
+
+  /** Removes the key from the ghost lists, if present. */
+  void forget(K key) {
+    final Integer b1Weight = b1.remove(key);
+    if (b1Weight != null) {
+      b1Size -= b1Weight;
+    }
+    final Integer b2Weight = b2.remove(key);
+    if (b2Weight != null) {
+      b2Size -= b2Weight;
+    }
+  }
+
+  /** Removes the eldest key from the ghost list and returns its weight. */
+  static <K> int removeEldest(LinkedHashMap<K, Integer> ghosts) {
+    final Iterator<Integer> iterator = ghosts.values().iterator();
+    final int weight = iterator.next();
+    iterator.remove();
+    return weight;
+  }
+
+  /**
+   * Links the node to the most recently used position of its list and
+   * adjusts the list's weighted size.
+   */
+  void link(Node<K, V> node, Region region) {
+    node.region = region;
+    if (region == Region.PROBATION) {
+      t1.add(node);
+      t1Size += node.policyWeight;
+    } else {
+      t2.add(node);
+      t2Size += node.policyWeight;
+    }
+  }
+
+  /** Unlinks the node from its list, if linked, and adjusts the list's weighted size. */
+  void unlink(Node<K, V> node) {
+    final Region region = node.region;
+    if (region == Region.PROBATION) {
+      t1.remove(node);
+      t1Size -= node.policyWeight;
+    } else if (region == Region.PROTECTED) {
+      t2.remove(node);
+      t2Size -= node.policyWeight;
+    }
+    node.region = null;
+  }
+
+  @Override
+  public Iterator<Node<K, V>> ascendingIterator() {
+    final List<Iterator<Node<K, V>>> iterators = new ArrayList<Iterator<Node<K, V>>>(2);
+    if (t1Size > target) {
+      iterators.add(t1.iterator());
+      iterators.add(t2.iterator());
+    } else {
+      iterators.add(t2.iterator());
+      iterators.add(t1.iterator());
+    }
+    return new ConcatenatedIterator<Node<K, V>>(iterators);
+  }
+
+  @Override
+  public Iterator<Node<K, V>> descendingIterator() {
+    final List<Iterator<Node<K, V>>> iterators = new ArrayList<Iterator<Node<K, V>>>(2);
+    if (t1Size > target) {
+      iterators.add(t2.descendingIterator());
+      iterators.add(t1.descendingIterator());
+    } else {
+      iterators.add(t1.descendingIterator());
+      iterators.add(t2.descendingIterator());
+    }
+    return new ConcatenatedIterator<Node<K, V>>(iterators);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.DiscardingListener;
+
+import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.checkNotNull;
+
+/**
+ * A map that holds the future results of loading its values, so that the
+ * concurrent requests for an absent key share a single load that is
+ * performed on an executor without blocking the callers.
+ * <p>
+ * An entry's weight is unknown until its value has been loaded, so an
+ * in-flight future is given a provisional weight of <tt>1</tt>. When the load
+ * completes the entry is weighed again by the builder's weigher, which is
+ * recorded with the page replacement policy as an update to the entry. A load
+ * that fails, is cancelled or computes <tt>null</tt> is removed from the map
+ * so that the next request will try again.
+ * <p>
+ * The eviction listener is notified only of the entries whose value was
+ * loaded successfully. A future that is put into the {@link #asMap()} view,
+ * rather than being created by this map, is weighed when it is inserted and
+ * is not reweighed when it completes.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of loaded values
+ * @see ConcurrentLinkedHashMap.Builder#buildAsync(Executor)
+ */
+@ThreadSafe
+public final class AsyncLoadingMap<K, V> {
+  final ConcurrentLinkedHashMap<K, Future<V>> data;
+  final Executor executor;
+
+  /**
+   * Creates an instance based on the builder's configuration.
+   */
+  @SuppressWarnings("unchecked")
+  AsyncLoadingMap(Builder<K, V> builder, Executor executor) {
+    final Builder<K, Future<V>> futures = new Builder<K, Future<V>>();
+    futures.concurrencyLevel = builder.concurrencyLevel;
+    futures.initialCapacity = builder.initialCapacity;
+    futures.capacity = builder.capacity;
+    futures.policyFactory = builder.policyFactory;
+    futures.executor = builder.executor;
+    futures.ticker = builder.ticker;
+    futures.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+    futures.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+    futures.recordStats = builder.recordStats;
+    futures.weigher = (builder.weigher == Weighers.entrySingleton())
+        ? Weighers.<K, Future<V>>entrySingleton()
+        : new FutureWeigher<K, V>(builder.weigher);
+    if (builder.listener != DiscardingListener.INSTANCE) {
+      futures.listener = new FutureListener<K, V>(builder.listener);
+    }
+
+    this.data = futures.build();
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the future value to which the specified key is mapped, or
+   * <tt>null</tt> if this map contains no mapping for the key.
+   *
+   * @param key the key whose associated future is to be returned
+   * @return the future value to which the key is mapped, or <tt>null</tt>
+   * @throws NullPointerException if the specified key is null
+   */
+  public Future<V> getIfPresent(Object key) {
+    return data.get(key);
+  }
+
+  /**
+   * Returns the future value to which the specified key is mapped, starting
+   * a load on the executor if the key is absent. Concurrent calls for an
+   * absent key share the load started by the first caller.
+   *
+   * @param key the key whose associated future is to be returned
+   * @param loader the function that computes the value if the key is absent
+   * @return the current (existing or loading) future value of the key
+   * @throws NullPointerException if the key or loader is null
+   */
+  public Future<V> get(K key, Function<? super K, ? extends V> loader) {
+    checkNotNull(loader);
+    final Future<V> future = data.get(key);
+    if (future != null) {
+      return future;
+    }
+
+    final LoadTask task = new LoadTask(key, loader);
+    final Future<V> prior = data.putIfAbsent(key, task);
+    if (prior != null) {
+      return prior;
+    }
+    execute(task);
+    return task;
+  }
+
+  /**
+   * Starts a load of the value on the executor, which replaces the current
+   * mapping of the key once the load is inserted into the map.
+   *
+   * @param key key with which the loaded value is to be associated
+   * @param loader the function that computes the value
+   * @return the future value of the key
+   * @throws NullPointerException if the key or loader is null
+   */
+  public Future<V> put(K key, Function<? super K, ? extends V> loader) {
+    checkNotNull(loader);
+    final LoadTask task = new LoadTask(key, loader);
+    data.put(key, task);
+    execute(task);
+    return task;
+  }
+
+  /**
+   * Removes the mapping for a key from this map if it is present. An
+   * in-flight load is not cancelled.
+   *
+   * @param key key whose mapping is to be removed from the map
+   * @return the previous future value of the key, or <tt>null</tt>
+   * @throws NullPointerException if the specified key is null
+   */
+  public Future<V> remove(Object key) {
+    return data.remove(key);
+  }
+
+  /**
+   * Returns a view of the entries stored in this map as futures. Changes to
+   * the view are reflected by this map and the capacity may be adjusted
+   * through it.
+   *
+   * @return the map of the keys to their future values
+   */
+  public ConcurrentLinkedHashMap<K, Future<V>> asMap() {
+    return data;
+  }
+
+  /** Runs the load on the executor, or the caller's thread if rejected. */
+  void execute(LoadTask task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+  }
+
+  /**
+   * Returns the value of the completed future, or <tt>null</tt> if it failed
+   * or was cancelled.
+   */
+  static <V> V valueOf(Future<V> future) {
+    boolean interrupted = false;
+    try {
+      for (;;) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      return null;
+    } catch (CancellationException e) {
+      return null;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** A load that replaces its provisional weight, or its entry, on completion. */
+  final class LoadTask extends FutureTask<V> {
+    final K key;
+
+    LoadTask(final K key, final Function<? super K, ? extends V> loader) {
+      super(new Callable<V>() {
+        @Override public V call() {
+          return loader.apply(key);
+        }
+      });
+      this.key = key;
+    }
+
+    @Override
+    protected void done() {
+      if (!isCancelled() && (valueOf(this) != null)) {
+        data.replace(key, this, this);
+      } else {
+        data.remove(key, this);
+      }
+    }
+  }
+
+  /** A weigher that weighs the value of a successfully completed future. */
+  static final class FutureWeigher<K, V> implements EntryWeigher<K, Future<V>> {
+    final EntryWeigher<? super K, ? super V> weigher;
+
+    FutureWeigher(EntryWeigher<? super K, ? super V> weigher) {
+      this.weigher = weigher;
+    }
+
+    @Override
+    public int weightOf(K key, Future<V> future) {
+      if (!future.isDone()) {
+        return 1;
+      }
+      final V value = valueOf(future);
+      return (value == null) ? 1 : weigher.weightOf(key, value);
+    }
+  }
+
+  /** A listener that is notified of the successfully loaded values. */
+  static final class FutureListener<K, V> implements EvictionListener<K, Future<V>> {
+    final EvictionListener<K, V> listener;
+
+    FutureListener(EvictionListener<K, V> listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void onEviction(K key, Future<V> future) {
+      if (future.isDone()) {
+        final V value = valueOf(future);
+        if (value != null) {
+          listener.onEviction(key, value);
+        }
+      }
+    }
+  }
+}
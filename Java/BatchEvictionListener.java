@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A listener registered for notification when entries are evicted, which
+ * receives the evicted entries in batches on an executor rather than on the
+ * caller's thread. A slow listener therefore does not delay the operations
+ * performed on the map, which only check whether notifications are pending.
+ * <p>
+ * At most one batch is delivered at a time for each map, in the order that
+ * the entries were evicted. A listener that fails to process a batch does not
+ * prevent later batches from being delivered.
+ *
+ * @see ConcurrentLinkedHashMap.Builder#listener(BatchEvictionListener,
+ *      java.util.concurrent.Executor)
+ */
+@ThreadSafe
+public interface BatchEvictionListener<K, V> {
+
+  /**
+   * A call-back notification that the entries were evicted.
+   *
+   * @param entries the evicted key-value pairs, in the order of their eviction
+   */
+  void onEviction(List<Entry<K, V>> entries);
+}
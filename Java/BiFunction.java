@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+/**
+ * A function that computes a result from two arguments, such as the new value
+ * for a key given its current value.
+ *
+ * @param <T> the type of the function's first argument
+ * @param <U> the type of the function's second argument
+ * @param <R> the type of the function's result
+ * @see ConcurrentLinkedHashMap#remap(Object, BiFunction)
+ */
+public interface BiFunction<T, U, R> {
+
+  /**
+   * Applies this function to the given arguments.
+   *
+   * @param t the function's first argument
+   * @param u the function's second argument
+   * @return the function's result
+   */
+  R apply(T t, U u);
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An immutable snapshot of how a {@link ConcurrentLinkedHashMap} has drained
+ * the buffers that it records reads and writes into. The read buffers are
+ * lossy by design, so under load the page replacement policy observes only a
+ * sample of the reads. These statistics describe how representative that
+ * sample is, such as whether the reads are being dropped or overwritten
+ * faster than the buffers are drained.
+ * <p>
+ * This is a diagnostic view of the map's internals rather than a stable
+ * part of its interface, and it may change as the internals evolve.
+ *
+ * @see ConcurrentLinkedHashMap#bufferStats()
+ */
+@Immutable
+public final class BufferStats {
+  private final long recordedReads;
+  private final long appliedReads;
+  private final long pendingReads;
+  private final long overwrittenReads;
+  private final long droppedReads;
+  private final long readDrainsAtThreshold;
+  private final long drainsAfterRead;
+  private final long drainsAfterWrite;
+  private final long writeBufferDrains;
+  private final long totalWriteBufferDepth;
+  private final int maxWriteBufferDepth;
+  private final long lockHoldCount;
+  private final long totalLockHoldTime;
+
+  BufferStats(long recordedReads, long appliedReads, long pendingReads, long overwrittenReads,
+      long droppedReads, long readDrainsAtThreshold, long drainsAfterRead,
+      long drainsAfterWrite, long writeBufferDrains, long totalWriteBufferDepth,
+      int maxWriteBufferDepth, long lockHoldCount, long totalLockHoldTime) {
+    this.recordedReads = recordedReads;
+    this.appliedReads = appliedReads;
+    this.pendingReads = pendingReads;
+    this.overwrittenReads = overwrittenReads;
+    this.droppedReads = droppedReads;
+    this.readDrainsAtThreshold = readDrainsAtThreshold;
+    this.drainsAfterRead = drainsAfterRead;
+    this.drainsAfterWrite = drainsAfterWrite;
+    this.writeBufferDrains = writeBufferDrains;
+    this.totalWriteBufferDepth = totalWriteBufferDepth;
+    this.maxWriteBufferDepth = maxWriteBufferDepth;
+    this.lockHoldCount = lockHoldCount;
+    this.totalLockHoldTime = totalLockHoldTime;
+  }
+
+  /** Returns the number of reads that claimed a slot in a read buffer. */
+  public long recordedReads() {
+    return recordedReads;
+  }
+
+  /** Returns the number of reads that were replayed against the policy. */
+  public long appliedReads() {
+    return appliedReads;
+  }
+
+  /** Returns the number of reads waiting in the buffers to be replayed. */
+  public long pendingReads() {
+    return pendingReads;
+  }
+
+  /**
+   * Returns the estimated number of reads that claimed a slot but were
+   * overwritten by a later read before the buffer was drained. A read whose
+   * slot is claimed but not yet written is briefly counted as overwritten.
+   */
+  public long overwrittenReads() {
+    return overwrittenReads;
+  }
+
+  /**
+   * Returns the number of reads that were discarded because every attempt to
+   * claim a slot was contended. This is only counted if the map records its
+   * statistics.
+   */
+  public long droppedReads() {
+    return droppedReads;
+  }
+
+  /**
+   * Returns the ratio of the reads that the policy did not observe, because
+   * they were overwritten or dropped, to all of the reads that were offered
+   * to the buffers, or <tt>0.0</tt> if there were none.
+   */
+  public double readLossRate() {
+    final long offered = recordedReads + droppedReads;
+    return (offered == 0) ? 0.0 : (double) (overwrittenReads + droppedReads) / offered;
+  }
+
+  /**
+   * Returns the number of times that a read buffer's drain stopped at the
+   * amortized threshold while reads were still pending.
+   */
+  public long readDrainsAtThreshold() {
+    return readDrainsAtThreshold;
+  }
+
+  /** Returns the number of drains that were prompted by a read. */
+  public long drainsAfterRead() {
+    return drainsAfterRead;
+  }
+
+  /** Returns the number of drains that were prompted by a write. */
+  public long drainsAfterWrite() {
+    return drainsAfterWrite;
+  }
+
+  /** Returns the number of times that the write buffer was drained. */
+  public long writeBufferDrains() {
+    return writeBufferDrains;
+  }
+
+  /**
+   * Returns the average number of pending writes when the write buffer was
+   * drained, or <tt>0.0</tt> if it was not drained.
+   */
+  public double averageWriteBufferDepth() {
+    return (writeBufferDrains == 0) ? 0.0 : (double) totalWriteBufferDepth / writeBufferDrains;
+  }
+
+  /** Returns the largest number of pending writes when the write buffer was drained. */
+  public int maxWriteBufferDepth() {
+    return maxWriteBufferDepth;
+  }
+
+  /**
+   * Returns the number of times that the eviction lock was acquired and timed.
+   * This is only counted if the map records its statistics.
+   */
+  public long lockHoldCount() {
+    return lockHoldCount;
+  }
+
+  /**
+   * Returns the time that the eviction lock was held, in nanoseconds. This is
+   * only counted if the map records its statistics.
+   */
+  public long totalLockHoldTime() {
+    return totalLockHoldTime;
+  }
+
+  @Override
+  public String toString() {
+    return "BufferStats{recordedReads=" + recordedReads
+        + ", appliedReads=" + appliedReads
+        + ", pendingReads=" + pendingReads
+        + ", overwrittenReads=" + overwrittenReads
+        + ", droppedReads=" + droppedReads
+        + ", readDrainsAtThreshold=" + readDrainsAtThreshold
+        + ", drainsAfterRead=" + drainsAfterRead
+        + ", drainsAfterWrite=" + drainsAfterWrite
+        + ", writeBufferDrains=" + writeBufferDrains
+        + ", totalWriteBufferDepth=" + totalWriteBufferDepth
+        + ", maxWriteBufferDepth=" + maxWriteBufferDepth
+        + ", lockHoldCount=" + lockHoldCount
+        + ", totalLockHoldTime=" + totalLockHoldTime + "}";
+  }
+}
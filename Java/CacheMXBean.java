@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+/**
+ * A management interface that publishes a {@link ConcurrentLinkedHashMap}'s
+ * size, statistics and buffer behavior so that a running map can be inspected
+ * with a JMX console. The capacity is writable so that a thrashing map may be
+ * resized without restarting the application.
+ * <p>
+ * The statistics are only recorded if the map was built with
+ * {@link ConcurrentLinkedHashMap.Builder#recordStats()}, as indicated by
+ * {@link #isStatisticsEnabled()}. Each attribute is read independently, so
+ * the attributes are not a consistent snapshot of the map.
+ *
+ * @see CacheMXBeans
+ */
+public interface CacheMXBean {
+
+  /** Returns the number of entries in the map. */
+  int getSize();
+
+  /** Returns the combined weight of the entries in the map. */
+  long getWeightedSize();
+
+  /** Returns the maximum weighted capacity of the map. */
+  long getCapacity();
+
+  /**
+   * Sets the maximum weighted capacity of the map, evicting entries if it
+   * now exceeds the capacity.
+   *
+   * @param capacity the maximum weighted capacity of the map
+   * @throws IllegalArgumentException if the capacity is negative
+   */
+  void setCapacity(long capacity);
+
+  /** Returns if the map records its statistics. */
+  boolean isStatisticsEnabled();
+
+  /** Returns the number of lookups that found a present entry. */
+  long getHitCount();
+
+  /** Returns the number of lookups that found the entry absent or expired. */
+  long getMissCount();
+
+  /** Returns the ratio of lookups that were hits. */
+  double getHitRate();
+
+  /** Returns the number of writes that added or replaced an entry. */
+  long getPutCount();
+
+  /** Returns the number of entries that were evicted or expired. */
+  long getEvictionCount();
+
+  /** Returns the ratio of evictions to the writes that added or replaced an entry. */
+  double getEvictionRate();
+
+  /** Returns the sum of the weights of the evicted entries. */
+  long getEvictionWeight();
+
+  /** Returns the number of times that the buffers were drained. */
+  long getDrainCount();
+
+  /** Returns the average time spent draining the buffers, in nanoseconds. */
+  double getAverageDrainTime();
+
+  /**
+   * Returns the ratio of the reads that the policy did not observe because
+   * they were lost by the read buffers.
+   */
+  double getReadLossRate();
+
+  /** Returns the number of drains that were prompted by a read. */
+  long getDrainsAfterRead();
+
+  /** Returns the number of drains that were prompted by a write. */
+  long getDrainsAfterWrite();
+
+  /** Returns the average number of pending writes when the write buffer was drained. */
+  double getAverageWriteBufferDepth();
+
+  /** Returns the time that the eviction lock was held, in nanoseconds. */
+  long getTotalLockHoldTime();
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.checkNotNull;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Static utility methods that publish a {@link ConcurrentLinkedHashMap} as a
+ * {@link CacheMXBean}. A map is not published unless it is registered
+ * explicitly, so the management support costs nothing when it is not used.
+ * A registered map is strongly referenced by the platform's MBean server
+ * until it is unregistered.
+ * <pre>{@code
+ * ConcurrentLinkedHashMap<K, V> cache = new Builder<K, V>()
+ *     .maximumWeightedCapacity(5000)
+ *     .recordStats()
+ *     .build();
+ * CacheMXBeans.register(cache, "users");
+ * }</pre>
+ */
+public final class CacheMXBeans {
+  static final String DOMAIN = "com.googlecode.concurrentlinkedhashmap";
+
+  private CacheMXBeans() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Returns a management view of the map, for registering with an MBean
+   * server of the caller's choosing.
+   *
+   * @param map the map to be managed
+   * @return a management view of the map
+   * @throws NullPointerException if the map is null
+   */
+  public static CacheMXBean newMXBean(ConcurrentLinkedHashMap<?, ?> map) {
+    checkNotNull(map);
+    return new MapMXBean(map);
+  }
+
+  /**
+   * Returns the name that the map is registered under for the given name.
+   *
+   * @param name the name that distinguishes the map from other maps
+   * @return the object name of the MBean
+   * @throws NullPointerException if the name is null
+   */
+  public static ObjectName objectName(String name) {
+    checkNotNull(name);
+    try {
+      return new ObjectName(DOMAIN + ":type=ConcurrentLinkedHashMap,name="
+          + ObjectName.quote(name));
+    } catch (JMException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  /**
+   * Registers the map with the platform's MBean server.
+   *
+   * @param map the map to be managed
+   * @param name the name that distinguishes the map from other maps
+   * @return the object name that the map was registered under
+   * @throws NullPointerException if the map or name is null
+   * @throws IllegalStateException if a map is already registered under the
+   *     name or if the registration failed
+   */
+  public static ObjectName register(ConcurrentLinkedHashMap<?, ?> map, String name) {
+    final ObjectName objectName = objectName(name);
+    final CacheMXBean mxBean = newMXBean(map);
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(mxBean, objectName);
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+    return objectName;
+  }
+
+  /**
+   * Unregisters the map that was registered under the name from the
+   * platform's MBean server, if present.
+   *
+   * @param name the name that the map was registered with
+   * @throws NullPointerException if the name is null
+   * @throws IllegalStateException if the unregistration failed
+   */
+  public static void unregister(String name) {
+    final ObjectName objectName = objectName(name);
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** A management view that reads the map's attributes on demand. */
+  static final class MapMXBean implements CacheMXBean {
+    final ConcurrentLinkedHashMap<?, ?> map;
+
+    MapMXBean(ConcurrentLinkedHashMap<?, ?> map) {
+      this.map = map;
+    }
+
+    @Override public int getSize() {
+      return map.size();
+    }
+
+    @Override public long getWeightedSize() {
+      return map.weightedSize();
+    }
+
+    @Override public long getCapacity() {
+      return map.capacity();
+    }
+
+    @Override public void setCapacity(long capacity) {
+      map.setCapacity(capacity);
+    }
+
+    @Override public boolean isStatisticsEnabled() {
+      return map.recordsStats();
+    }
+
+    @Override public long getHitCount() {
+      return map.stats().hitCount();
+    }
+
+    @Override public long getMissCount() {
+      return map.stats().missCount();
+    }
+
+    @Override public double getHitRate() {
+      return map.stats().hitRate();
+    }
+
+    @Override public long getPutCount() {
+      return map.stats().putCount();
+    }
+
+    @Override public long getEvictionCount() {
+      return map.stats().evictionCount();
+    }
+
+    @Override public double getEvictionRate() {
+      final CacheStats stats = map.stats();
+      return (stats.putCount() == 0) ? 0.0 : (double) stats.evictionCount() / stats.putCount();
+    }
+
+    @Override public long getEvictionWeight() {
+      return map.stats().evictionWeight();
+    }
+
+    @Override public long getDrainCount() {
+      return map.stats().drainCount();
+    }
+
+    @Override public double getAverageDrainTime() {
+      return map.stats().averageDrainTime();
+    }
+
+    @Override public double getReadLossRate() {
+      return map.bufferStats().readLossRate();
+    }
+
+    @Override public long getDrainsAfterRead() {
+      return map.bufferStats().drainsAfterRead();
+    }
+
+    @Override public long getDrainsAfterWrite() {
+      return map.bufferStats().drainsAfterWrite();
+    }
+
+    @Override public double getAverageWriteBufferDepth() {
+      return map.bufferStats().averageWriteBufferDepth();
+    }
+
+    @Override public long getTotalLockHoldTime() {
+      return map.bufferStats().totalLockHoldTime();
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An immutable snapshot of the statistics recorded by a
+ * {@link ConcurrentLinkedHashMap}. The statistics are only recorded if the
+ * map was built with {@link ConcurrentLinkedHashMap.Builder#recordStats()}.
+ * <p>
+ * The counters are read individually rather than atomically as a group, so a
+ * snapshot taken while the map is in use may not reflect a single instant in
+ * time. Each count is non-decreasing over the life of the map.
+ *
+ * @see ConcurrentLinkedHashMap#stats()
+ */
+@Immutable
+public final class CacheStats {
+  static final CacheStats EMPTY = new CacheStats(0L, 0L, 0L, 0L, 0L, 0L, 0L);
+
+  private final long hitCount;
+  private final long missCount;
+  private final long putCount;
+  private final long evictionCount;
+  private final long evictionWeight;
+  private final long drainCount;
+  private final long totalDrainTime;
+
+  /**
+   * Creates a snapshot of the statistics.
+   *
+   * @param hitCount the number of lookups that found a present entry
+   * @param missCount the number of lookups that found the entry absent
+   * @param putCount the number of writes that added or replaced an entry
+   * @param evictionCount the number of entries evicted or expired
+   * @param evictionWeight the sum of the weights of the evicted entries
+   * @param drainCount the number of times the buffers were drained
+   * @param totalDrainTime the time spent draining the buffers, in nanoseconds
+   * @throws IllegalArgumentException if any of the values are negative
+   */
+  public CacheStats(long hitCount, long missCount, long putCount, long evictionCount,
+      long evictionWeight, long drainCount, long totalDrainTime) {
+    ConcurrentLinkedHashMap.checkArgument((hitCount >= 0) && (missCount >= 0)
+        && (putCount >= 0) && (evictionCount >= 0) && (evictionWeight >= 0)
+        && (drainCount >= 0) && (totalDrainTime >= 0));
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.putCount = putCount;
+    this.evictionCount = evictionCount;
+    this.evictionWeight = evictionWeight;
+    this.drainCount = drainCount;
+    this.totalDrainTime = totalDrainTime;
+  }
+
+  /** Returns the number of lookups, which is the sum of the hits and misses. */
+  public long requestCount() {
+    return hitCount + missCount;
+  }
+
+  /** Returns the number of lookups that found a present entry. */
+  public long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the ratio of lookups that were hits, or <tt>1.0</tt> if no
+   * lookups were performed.
+   */
+  public double hitRate() {
+    final long requestCount = requestCount();
+    return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  /** Returns the number of lookups that found the entry absent or expired. */
+  public long missCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the ratio of lookups that were misses, or <tt>0.0</tt> if no
+   * lookups were performed.
+   */
+  public double missRate() {
+    final long requestCount = requestCount();
+    return (requestCount == 0) ? 0.0 : (double) missCount / requestCount;
+  }
+
+  /** Returns the number of writes that added or replaced an entry. */
+  public long putCount() {
+    return putCount;
+  }
+
+  /**
+   * Returns the number of entries that were evicted due to the capacity or
+   * that expired. Explicit removals are not counted.
+   */
+  public long evictionCount() {
+    return evictionCount;
+  }
+
+  /** Returns the sum of the weights of the evicted entries. */
+  public long evictionWeight() {
+    return evictionWeight;
+  }
+
+  /** Returns the number of times that the buffers were drained. */
+  public long drainCount() {
+    return drainCount;
+  }
+
+  /** Returns the time spent draining the buffers, in nanoseconds. */
+  public long totalDrainTime() {
+    return totalDrainTime;
+  }
+
+  /**
+   * Returns the average time spent draining the buffers, in nanoseconds, or
+   * <tt>0.0</tt> if the buffers were not drained.
+   */
+  public double averageDrainTime() {
+    return (drainCount == 0) ? 0.0 : (double) totalDrainTime / drainCount;
+  }
+
+  /**
+   * Returns the difference between this snapshot and an earlier one, which
+   * describes the activity within that interval. Negative differences are
+   * rounded up to zero.
+   *
+   * @param other the earlier snapshot
+   * @return the statistics recorded since the earlier snapshot
+   */
+  public CacheStats minus(CacheStats other) {
+    return new CacheStats(
+        Math.max(0L, hitCount - other.hitCount),
+        Math.max(0L, missCount - other.missCount),
+        Math.max(0L, putCount - other.putCount),
+        Math.max(0L, evictionCount - other.evictionCount),
+        Math.max(0L, evictionWeight - other.evictionWeight),
+        Math.max(0L, drainCount - other.drainCount),
+        Math.max(0L, totalDrainTime - other.totalDrainTime));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    } else if (!(o instanceof CacheStats)) {
+      return false;
+    }
+    final CacheStats other = (CacheStats) o;
+    return (hitCount == other.hitCount)
+        && (missCount == other.missCount)
+        && (putCount == other.putCount)
+        && (evictionCount == other.evictionCount)
+        && (evictionWeight == other.evictionWeight)
+        && (drainCount == other.drainCount)
+        && (totalDrainTime == other.totalDrainTime);
+  }
+
+  @Override
+  public int hashCode() {
+    final long[] values = { hitCount, missCount, putCount,
+        evictionCount, evictionWeight, drainCount, totalDrainTime };
+    return Arrays.hashCode(values);
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{hitCount=" + hitCount
+        + ", missCount=" + missCount
+        + ", putCount=" + putCount
+        + ", evictionCount=" + evictionCount
+        + ", evictionWeight=" + evictionWeight
+        + ", drainCount=" + drainCount
+        + ", totalDrainTime=" + totalDrainTime + "}";
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Node;
+
+/**
+ * The CLOCK policy, which approximates LRU by giving an entry that was read
+ * since the hand last passed over it a second chance.
+ * <p>
+ * A read sets the entry's reference bit by {@link #recordRead} on the reading
+ * thread, rather than being buffered, unless the map expires entries after
+ * access or by an {@link Expiry}. The entries are kept in insertion order,
+ * where the head of the deque is the position of the clock's hand. When a
+ * victim is required the hand sweeps forward, clearing the reference bit of
+ * each entry and moving it behind the hand, until it finds an entry that was
+ * not referenced.
+ *
+ * @param <K> the type of keys maintained by the map
+ * @param <V> the type of mapped values
+ */
+@NotThreadSafe
+final class ClockPolicy<K, V> implements EvictionPolicy<K, V>, EvictionPolicy.UnbufferedReads {
+  final LinkedDeque<Node<K, V>> deque = new LinkedDeque<Node<K, V>>();
+
+  @Override
+  public void setCapacity(long capacity) {}
+
+  @Override
+  public void onAdd(Entry<K, V> entry, int weight) {
+    deque.add((Node<K, V>) entry);
+  }
+
+  @Override
+  public void onAccess(Entry<K, V> entry) {
+    recordRead(entry);
+  }
+
+  @Override
+  public void recordRead(Entry<?, ?> entry) {
+    // The bit is checked first so that a popular entry does not have its cache
+    // line invalidated on every read
+    final Node<?, ?> node = (Node<?, ?>) entry;
+    if (!node.referenced) {
+      node.referenced = true;
+    }
+  }
+
+  @Override
+  public void onUpdate(Entry<K, V> entry, int weightDifference) {
+    onAccess(entry);
+  }
+
+  @Override
+  public void onRemove(Entry<K, V> entry) {
+    deque.remove(entry);
+  }
+
+  @Override
+  public Node<K, V> selectVictim() {
+    // Terminates within two revolutions, as every referenced entry is cleared
+    // during the first
+    for (;;) {
+      final Node<K, V> node = deque.peekFirst();
+      if ((node == null) || !node.referenced) {
+        return deque.poll();
+      }
+      node.referenced = false;
+      deque.moveToBack(node);
+    }
+  }
+
+  /** Returns the entries in the order that the hand would evict them. */
+  List<Node<K, V>> sweepOrder() {
+    final List<Node<K, V>> nodes = new ArrayList<Node<K, V>>(deque.size());
+    for (Node<K, V> node : deque) {
+      if (!node.referenced) {
+        nodes.add(node);
+      }
+    }
+    for (Node<K, V> node : deque) {
+      if (node.referenced) {
+        nodes.add(node);
+      }
+    }
+    return nodes;
+  }
+
+  @Override
+  public Iterator<Node<K, V>> ascendingIterator() {
+    return sweepOrder().iterator();
+  }
+
+  @Override
+  public Iterator<Node<K, V>> descendingIterator() {
+    final List<Node<K, V>> nodes = sweepOrder();
+    Collections.reverse(nodes);
+    return nodes.iterator();
+  }
+}
@@ -22,30 +22,43 @@ import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractQueue;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.concurrent.GuardedBy;
-import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import com.googlecode.concurrentlinkedhashmap.ConcurrentHashMapV8.BiFun;
+
 import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.DrainStatus.IDLE;
 import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.DrainStatus.PROCESSING;
 import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.DrainStatus.REQUIRED;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
 import static java.util.Collections.unmodifiableSet;
 
@@ -75,7 +88,9 @@ import static java.util.Collections.unmodifiableSet;
  * times or failures as a side effect of the listener being notified. Execution
  * safety and a fast turn around time can be achieved by performing the
  * operation asynchronously, such as by submitting a task to an
- * {@link java.util.concurrent.ExecutorService}.
+ * {@link java.util.concurrent.ExecutorService}. Alternatively a
+ * {@link BatchEvictionListener} may be supplied with an executor, which then
+ * receives the evicted entries in batches off of the caller's thread.
  * <p>
  * The <tt>concurrency level</tt> determines the number of threads that can
  * concurrently modify the table. Using a significantly higher or lower value
@@ -125,9 +140,23 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
    * nature of the read and write operations a strict policy ordering is not
    * possible, but is observably strict when single threaded.
    *
-   * Due to a lack of a strict ordering guarantee, a task can be executed
+   * The writes must not be lost, so they are recorded in a bounded buffer. A
+   * writer that finds the buffer full blocks on the eviction lock to help
+   * drain it, which throttles the writers to the rate that the policy can be
+   * maintained rather than allowing the buffer to grow without bound. A write
+   * is recorded as an operation code and the node, rather than as a task
+   * object, so that the write path does not allocate beyond the new node.
+   *
+   * The buffers are drained by the calling threads unless the map is given an
+   * executor, in which case a caller only schedules the drain. This moves the
+   * occasional cost of maintaining the policy off of latency sensitive
+   * threads, except when the write buffer is full and writers must help.
+   *
+   * Due to a lack of a strict ordering guarantee, an operation can be applied
    * out-of-order, such as a removal followed by its addition. The state of the
-   * entry is encoded within the value's weight.
+   * entry is encoded within the node's weight. The value and weight are
+   * changed together while synchronized on the node, which is uncontended in
+   * the common case, so that a transition does not allocate.
    *
    * Alive: The entry is in both the hash-table and the page replacement policy.
    * This is represented by a positive weight.
@@ -141,6 +170,41 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
    * The Least Recently Used page replacement algorithm was chosen due to its
    * simplicity, high hit rate, and ability to be implemented with O(1) time
    * complexity.
+   *
+   * LRU is vulnerable to scans, where a burst of one-hit wonders flushes the
+   * popular entries out of the map. The page replacement policy is therefore
+   * pluggable, such as the Window TinyLFU policy that only admits new entries
+   * that are estimated to be more popular than the victim. The policy is only
+   * invoked while draining the buffers under the eviction lock, so any policy
+   * benefits from the same amortized cost and does not need to be thread-safe.
+   *
+   * An entry may expire after a fixed duration since it was last written or
+   * accessed. The node records the timestamps so that a reader can treat an
+   * expired entry as absent without the lock. The nodes are also linked into
+   * deques ordered by access and by write, which are maintained by replaying
+   * the buffers, so that the expired entries are at the heads of the deques
+   * and are removed when the buffers are drained.
+   *
+   * When each entry has its own lifetime there is no single ordering, so the
+   * entries are instead scheduled on a hierarchical timer wheel by the time at
+   * which they expire. A bucket's span grows with the distance from the
+   * current time, so scheduling and cancelling an entry are O(1) and the wheel
+   * is advanced when the buffers are drained, which removes the entries in
+   * the buckets that elapsed and cascades the others to finer buckets. The
+   * removal may therefore lag by up to a bucket's span of about a second,
+   * whereas a reader compares the entry's expiration time exactly.
+   *
+   * An entry may instead be refreshed after a duration since it was written.
+   * The first read that observes the entry to be due claims it under the
+   * node's lock and schedules a reload on an executor, while that read and
+   * any others continue to return the current value. The reloaded value is
+   * swapped in only if the entry was not written or removed in the meantime,
+   * so a popular entry is never absent while it is being recomputed.
+   *
+   * The CLOCK policy is the exception to recording reads in the buffers. A
+   * read sets a reference bit on the entry, which the policy's sweep clears
+   * under the eviction lock to give the entry a second chance. This makes a
+   * read on a read-mostly map cost a single store without any contention.
    */
 
   /** The number of CPUs */
@@ -149,11 +213,14 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   /** The maximum weighted capacity of the map. */
   static final long MAXIMUM_CAPACITY = Long.MAX_VALUE - Integer.MAX_VALUE;
 
-  /** The number of read buffers to use. */
+  /** The maximum duration before an entry expires (~146 years). */
+  static final long MAXIMUM_EXPIRY = (Long.MAX_VALUE >> 1);
+
+  /** The maximum number of read buffers that the stripes may grow to. */
   static final int NUMBER_OF_READ_BUFFERS = ceilingNextPowerOfTwo(NCPU);
 
-  /** Mask value for indexing into the read buffers. */
-  static final int READ_BUFFERS_MASK = NUMBER_OF_READ_BUFFERS - 1;
+  /** The number of attempts to record a read before it is discarded. */
+  static final int READ_BUFFER_ATTEMPTS = 3;
 
   /** The number of pending read operations before attempting to drain. */
   static final int READ_BUFFER_THRESHOLD = 32;
@@ -167,44 +234,125 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   /** Mask value for indexing into the read buffer. */
   static final int READ_BUFFER_INDEX_MASK = READ_BUFFER_SIZE - 1;
 
+  /** The number of unused slots on each side of a read buffer's ring. */
+  static final int READ_BUFFER_PADDING = 16;
+
   /** The maximum number of write operations to perform per amortized drain. */
   static final int WRITE_BUFFER_DRAIN_THRESHOLD = 16;
 
+  /** The maximum number of pending write operations. */
+  static final int WRITE_BUFFER_SIZE = 8 * WRITE_BUFFER_DRAIN_THRESHOLD;
+
+  /** The maximum number of drains to perform per attempt while writes are pending. */
+  static final int MAXIMUM_DRAIN_ATTEMPTS = WRITE_BUFFER_SIZE / WRITE_BUFFER_DRAIN_THRESHOLD;
+
+  /** The write operation that adds the node to the page replacement policy. */
+  static final int ADD = 0;
+
+  /** The write operation that removes the node from the page replacement policy. */
+  static final int REMOVE = 1;
+
+  /** The write operation that changes the node's weight. */
+  static final int UPDATE = 2;
+
+  /** The logger that reports the failures to reload an entry or schedule a drain. */
+  static final Logger logger = Logger.getLogger(ConcurrentLinkedHashMap.class.getName());
+
+  /** The maximum number of entries delivered to a batch listener at once. */
+  static final int NOTIFICATION_BATCH_SIZE = 256;
+
   /** A queue that discards all entries. */
   static final Queue<?> DISCARDING_QUEUE = new DiscardingQueue();
 
+  /** The generator of the initial probe value for each thread. */
+  static final AtomicInteger PROBE_GENERATOR = new AtomicInteger();
+
+  /** The thread's probe into the read buffers, which is rehashed on contention. */
+  static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      // The golden ratio spreads the consecutive seeds across the stripes
+      final int seed = PROBE_GENERATOR.addAndGet(0x9e3779b9);
+      return new int[] { (seed == 0) ? 1 : seed };
+    }
+  };
+
   static int ceilingNextPowerOfTwo(int x) {
     // From Hacker's Delight, Chapter 3, Harry S. Warren Jr.
     return 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(x - 1));
   }
 
   // The backing data store holding the key-value associations
-  final ConcurrentMap<K, Node<K, V>> data;
+  final ConcurrentHashMapV8<K, Node<K, V>> data;
   final int concurrencyLevel;
 
   // These fields provide support to bound the map by a maximum capacity
   @GuardedBy("evictionLock")
-  final long[] readBufferReadCount;
-  @GuardedBy("evictionLock")
-  final LinkedDeque<Node<K, V>> evictionDeque;
+  final EvictionPolicy<K, V> policy;
+  final EvictionPolicy.UnbufferedReads unbufferedReads;
+  final boolean bufferReads;
 
   @GuardedBy("evictionLock") // must write under lock
   final PaddedAtomicLong weightedSize;
   @GuardedBy("evictionLock") // must write under lock
   final PaddedAtomicLong capacity;
 
-  final Lock evictionLock;
-  final Queue<Runnable> writeBuffer;
-  final PaddedAtomicLong[] readBufferWriteCount;
-  final PaddedAtomicLong[] readBufferDrainAtWriteCount;
-  final PaddedAtomicReference<Node<K, V>>[][] readBuffers;
+  final ReentrantLock evictionLock;
+  final WriteBuffer<Node<K, V>> writeBuffer;
+  final WriteBuffer.Consumer<Node<K, V>> writeConsumer;
+  final AtomicBoolean readBuffersResizing;
+  volatile ReadBuffer<Node<K, V>>[] readBuffers;
 
   final PaddedAtomicReference<DrainStatus> drainStatus;
   final EntryWeigher<? super K, ? super V> weigher;
+  final EvictionPolicy.Factory policyFactory;
+  final Runnable drainBuffersTask;
+  final Executor executor;
+
+  // These fields provide support for expiring entries
+  @GuardedBy("evictionLock")
+  final AccessOrderDeque<K, V> accessOrderDeque;
+  @GuardedBy("evictionLock")
+  final WriteOrderDeque<K, V> writeOrderDeque;
+  @GuardedBy("evictionLock")
+  final TimerWheel<K, V> timerWheel;
+  final long expireAfterAccessNanos;
+  final long expireAfterWriteNanos;
+  final Expiry<K, V> expiry;
+  final Ticker ticker;
+
+  // These fields provide support for refreshing entries
+  final long refreshAfterWriteNanos;
+  final Reloader<K, V> reloader;
+  final Executor refreshExecutor;
+
+  // This field is null unless the statistics are recorded
+  final StatsCounter statsCounter;
+
+  // These fields provide support for instrumenting the buffers
+  @GuardedBy("evictionLock")
+  long drainsAfterRead;
+  @GuardedBy("evictionLock")
+  long drainsAfterWrite;
+  @GuardedBy("evictionLock")
+  long readDrainsAtThreshold;
+  @GuardedBy("evictionLock")
+  long clearedReads;
+  @GuardedBy("evictionLock")
+  long writeBufferDrains;
+  @GuardedBy("evictionLock")
+  long totalWriteBufferDepth;
+  @GuardedBy("evictionLock")
+  int maxWriteBufferDepth;
+  @GuardedBy("evictionLock")
+  long lockHoldCount;
+  @GuardedBy("evictionLock")
+  long totalLockHoldTime;
 
   // These fields provide support for notifying a listener.
   final Queue<Node<K, V>> pendingNotifications;
   final EvictionListener<K, V> listener;
+  final BatchNotifier batchNotifier;
 
   transient Set<K> keySet;
   transient Collection<V> values;
@@ -224,26 +372,44 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     weigher = builder.weigher;
     evictionLock = new ReentrantLock();
     weightedSize = new PaddedAtomicLong();
-    evictionDeque = new LinkedDeque<Node<K, V>>();
-    writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+    writeBuffer = new WriteBuffer<Node<K, V>>(WRITE_BUFFER_SIZE);
+    writeConsumer = new WriteConsumer();
+    policyFactory = builder.policyFactory;
+    policy = policyFactory.create();
+    policy.setCapacity(capacity.get());
+    bufferReads = !(policy instanceof EvictionPolicy.UnbufferedReads)
+        || (builder.expireAfterAccessNanos >= 0) || (builder.expiry != null);
+    unbufferedReads = bufferReads ? null : (EvictionPolicy.UnbufferedReads) policy;
     drainStatus = new PaddedAtomicReference<DrainStatus>(IDLE);
+    drainBuffersTask = new DrainBuffersTask();
+    executor = builder.executor;
 
-    readBufferReadCount = new long[NUMBER_OF_READ_BUFFERS];
-    readBufferWriteCount = new PaddedAtomicLong[NUMBER_OF_READ_BUFFERS];
-    readBufferDrainAtWriteCount = new PaddedAtomicLong[NUMBER_OF_READ_BUFFERS];
-    readBuffers = new PaddedAtomicReference[NUMBER_OF_READ_BUFFERS][READ_BUFFER_SIZE];
-    for (int i = 0; i < NUMBER_OF_READ_BUFFERS; i++) {
-      readBufferWriteCount[i] = new PaddedAtomicLong();
-      readBufferDrainAtWriteCount[i] = new PaddedAtomicLong();
-      readBuffers[i] = new PaddedAtomicReference[READ_BUFFER_SIZE];
-      for (int j = 0; j < READ_BUFFER_SIZE; j++) {
-        readBuffers[i][j] = new PaddedAtomicReference<Node<K, V>>();
-      }
-    }
+    // The read buffers are allocated on first use and grow on contention
+    readBuffersResizing = new AtomicBoolean();
+
+    // The expiration support
+    ticker = builder.ticker;
+    expireAfterWriteNanos = builder.expireAfterWriteNanos;
+    expireAfterAccessNanos = builder.expireAfterAccessNanos;
+    accessOrderDeque = new AccessOrderDeque<K, V>();
+    writeOrderDeque = new WriteOrderDeque<K, V>();
+    expiry = builder.expiry;
+    timerWheel = (expiry == null) ? null : new TimerWheel<K, V>(ticker.read());
+
+    // The refresh support
+    refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+    refreshExecutor = builder.refreshExecutor;
+    reloader = builder.reloader;
+
+    // The statistics are striped like the read buffers
+    statsCounter = builder.recordStats ? new StatsCounter(NUMBER_OF_READ_BUFFERS) : null;
 
     // The notification queue and listener
     listener = builder.listener;
-    pendingNotifications = (listener == DiscardingListener.INSTANCE)
+    batchNotifier = (builder.batchListener == null)
+        ? null
+        : new BatchNotifier(builder.batchListener, builder.notificationExecutor);
+    pendingNotifications = ((listener == DiscardingListener.INSTANCE) && (batchNotifier == null))
         ? (Queue<Node<K, V>>) DISCARDING_QUEUE
         : new ConcurrentLinkedQueue<Node<K, V>>();
   }
@@ -290,16 +456,34 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   public void setCapacity(long capacity) {
     checkArgument(capacity >= 0);
     evictionLock.lock();
+    final long lockedAt = startLockTimer();
     try {
       this.capacity.lazySet(Math.min(capacity, MAXIMUM_CAPACITY));
+      policy.setCapacity(this.capacity.get());
       drainBuffers();
       evict();
     } finally {
-      evictionLock.unlock();
+      unlockEviction(lockedAt);
     }
     notifyListener();
   }
 
+  /**
+   * Retrieves the weighted size that the adaptive eviction policy currently
+   * targets for its recency biased region. The target changes as the policy
+   * tunes itself to the workload, so it may be sampled to monitor the map.
+   *
+   * @return the current adaptation target
+   * @throws UnsupportedOperationException if the policy does not have an
+   *     adaptation target
+   */
+  public long adaptationTarget() {
+    if (!(policy instanceof EvictionPolicy.Adaptive)) {
+      throw new UnsupportedOperationException();
+    }
+    return ((EvictionPolicy.Adaptive) policy).adaptationTarget();
+  }
+
   /** Determines whether the map has exceeded its capacity. */
   @GuardedBy("evictionLock")
   boolean hasOverflowed() {
@@ -315,11 +499,11 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     // Attempts to evict entries from the map if it exceeds the maximum
     // capacity. If the eviction fails due to a concurrent removal of the
     // victim, that removal may cancel out the addition that triggered this
-    // eviction. The victim is eagerly unlinked before the removal task so
+    // eviction. The victim is eagerly unlinked before the removal operation so
     // that if an eviction is still required then a new victim will be chosen
     // for removal.
     while (hasOverflowed()) {
-      final Node<K, V> node = evictionDeque.poll();
+      final Node<K, V> node = (Node<K, V>) policy.selectVictim();
 
       // If weighted values are used, then the pending operations will adjust
       // the size to reflect the correct weight
@@ -329,338 +513,1037 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
 
       // Notify the listener only if the entry was evicted
       if (data.remove(node.key, node)) {
+        if (recordsStats()) {
+          statsCounter.recordEviction(Math.abs(node.weight));
+        }
         pendingNotifications.add(node);
       }
 
+      unlinkExpiration(node);
       makeDead(node);
     }
   }
 
-  /**
-   * Performs the post-processing work required after a read.
-   *
-   * @param node the entry in the page replacement policy
-   */
-  void afterRead(Node<K, V> node) {
-    final int bufferIndex = readBufferIndex();
-    final long writeCount = recordRead(bufferIndex, node);
-    drainOnReadIfNeeded(bufferIndex, writeCount);
-    notifyListener();
+  /** Returns if the entries expire after a duration since their last access. */
+  boolean expiresAfterAccess() {
+    return expireAfterAccessNanos >= 0;
+  }
+
+  /** Returns if the entries expire after a duration since their last write. */
+  boolean expiresAfterWrite() {
+    return expireAfterWriteNanos >= 0;
+  }
+
+  /** Returns if each entry expires after its own duration. */
+  boolean expiresVariably() {
+    return (expiry != null);
+  }
+
+  /** Returns if the entries expire after a duration. */
+  boolean expires() {
+    return expiresAfterAccess() || expiresAfterWrite() || expiresVariably();
   }
 
-  /** Returns the index to the read buffer to record into. */
-  static int readBufferIndex() {
-    // A buffer is chosen by the thread's id so that tasks are distributed in a
-    // pseudo evenly manner. This helps avoid hot entries causing contention
-    // due to other threads trying to append to the same buffer.
-    return ((int) Thread.currentThread().getId()) & READ_BUFFERS_MASK;
+  /** Returns if the entries are reloaded after a duration since their last write. */
+  boolean refreshesAfterWrite() {
+    return refreshAfterWriteNanos >= 0;
+  }
+
+  /** Returns if the hits, misses, writes, evictions and drains are recorded. */
+  boolean recordsStats() {
+    return (statsCounter != null);
+  }
+
+  /** Returns if the entries record the time that they were written and read. */
+  boolean recordsTime() {
+    return expires() || refreshesAfterWrite();
   }
 
   /**
-   * Records a read in the buffer and return its write count.
+   * Returns if the entry has expired.
    *
-   * @param bufferIndex the index to the chosen read buffer
    * @param node the entry in the page replacement policy
-   * @return the number of writes on the chosen read buffer
+   * @param now the current time, in nanoseconds
+   * @return if the entry's lifetime has elapsed
    */
-  long recordRead(int bufferIndex, Node<K, V> node) {
-    // The location in the buffer is chosen in a racy fashion as the increment
-    // is not atomic with the insertion. This means that concurrent reads can
-    // overlap and overwrite one another, resulting in a lossy buffer.
-    final PaddedAtomicLong counter = readBufferWriteCount[bufferIndex];
-    final long writeCount = counter.get();
-    counter.lazySet(writeCount + 1);
-
-    final int index = (int) (writeCount & READ_BUFFER_INDEX_MASK);
-    readBuffers[bufferIndex][index].lazySet(node);
-
-    return writeCount;
+  boolean hasExpired(Node<K, V> node, long now) {
+    return (expiresAfterAccess() && ((now - node.timing.accessTime) >= expireAfterAccessNanos))
+        || (expiresAfterWrite() && ((now - node.timing.writeTime) >= expireAfterWriteNanos))
+        || (expiresVariably() && ((now - node.timing.variableTime) >= 0));
   }
 
   /**
-   * Attempts to drain the buffers if it is determined to be needed when
-   * post-processing a read.
+   * Sets the timestamps of an entry whose value was written, asking the expiry
+   * for the entry's lifetime unless one was specified.
    *
-   * @param bufferIndex the index to the chosen read buffer
-   * @param writeCount the number of writes on the chosen read buffer
+   * @param node the entry that was created, or whose value was replaced
+   * @param duration the entry's lifetime in nanoseconds, or negative if unset
+   * @param created if the entry is new or replaced one that had expired
+   * @param now the current time, in nanoseconds
    */
-  void drainOnReadIfNeeded(int bufferIndex, long writeCount) {
-    final long pending = (writeCount - readBufferDrainAtWriteCount[bufferIndex].get());
-    final boolean delayable = (pending < READ_BUFFER_THRESHOLD);
-    final DrainStatus status = drainStatus.get();
-    if (status.shouldDrainBuffers(delayable)) {
-      tryToDrainBuffers();
+  void setWriteTime(Node<K, V> node, long duration, boolean created, long now) {
+    node.timing.accessTime = now;
+    node.timing.writeTime = now;
+    if (expiresVariably()) {
+      if (duration < 0) {
+        duration = created
+            ? expiry.expireAfterCreate(node.key, node.value, now)
+            : expiry.expireAfterUpdate(node.key, node.value, now, node.timing.variableTime - now);
+      }
+      node.timing.variableTime = expirationTime(duration, now);
     }
   }
 
   /**
-   * Performs the post-processing work required after a write.
+   * Sets the timestamps of an entry that was read.
    *
-   * @param task the pending operation to be applied
+   * @param node the entry that was read
+   * @param now the current time, in nanoseconds
    */
-  void afterWrite(Runnable task) {
-    writeBuffer.add(task);
-    drainStatus.lazySet(REQUIRED);
-    tryToDrainBuffers();
-    notifyListener();
+  void setAccessTime(Node<K, V> node, long now) {
+    if (expiresAfterAccess()) {
+      node.timing.accessTime = now;
+    }
+    if (expiresVariably()) {
+      final long duration = expiry.expireAfterRead(
+          node.key, node.getValue(), now, node.timing.variableTime - now);
+      node.timing.variableTime = expirationTime(duration, now);
+    }
   }
 
   /**
-   * Attempts to acquire the eviction lock and apply the pending operations, up
-   * to the amortized threshold, to the page replacement policy.
+   * Creates a new, unlinked node that was written at the given time, which
+   * carries the timing data only if the map records the time.
+   *
+   * @param key the entry's key
+   * @param value the entry's value
+   * @param weight the entry's weight
+   * @param now the current time, in nanoseconds
+   * @return a node for the entry
    */
-  void tryToDrainBuffers() {
-    if (evictionLock.tryLock()) {
-      try {
-        drainStatus.lazySet(PROCESSING);
-        drainBuffers();
-      } finally {
-        drainStatus.compareAndSet(PROCESSING, IDLE);
-        evictionLock.unlock();
-      }
-    }
+  Node<K, V> newNode(K key, V value, int weight, long now) {
+    final Timing<K, V> timing = recordsTime() ? new Timing<K, V>(now) : null;
+    return new Node<K, V>(key, value, weight, timing);
   }
 
-  /** Drains the read and write buffers up to an amortized threshold. */
+  /** Returns the time at which an entry with the given lifetime expires. */
+  static long expirationTime(long duration, long now) {
+    return now + Math.max(0L, Math.min(duration, MAXIMUM_EXPIRY));
+  }
+
+  /** Removes the expired entries from the map. */
   @GuardedBy("evictionLock")
-  void drainBuffers() {
-    drainReadBuffers();
-    drainWriteBuffer();
+  void expireEntries() {
+    if (!expires()) {
+      return;
+    }
+    final long now = ticker.read();
+    expireEntries(accessOrderDeque, now);
+    expireEntries(writeOrderDeque, now);
+    if (expiresVariably()) {
+      timerWheel.advance(this, now);
+    }
   }
 
-  /** Drains the read buffers, each up to an amortized threshold. */
+  /**
+   * Removes the expired entries from the head of the deque, stopping at the
+   * first entry that has not expired.
+   *
+   * @param deque the deque ordered by when its entries will expire
+   * @param now the current time, in nanoseconds
+   */
   @GuardedBy("evictionLock")
-  void drainReadBuffers() {
-    final int start = (int) Thread.currentThread().getId();
-    final int end = start + NUMBER_OF_READ_BUFFERS;
-    for (int i = start; i < end; i++) {
-      drainReadBuffer(i & READ_BUFFERS_MASK);
+  void expireEntries(AbstractLinkedDeque<Node<K, V>> deque, long now) {
+    Node<K, V> node;
+    while (((node = deque.peekFirst()) != null) && hasExpired(node, now)) {
+      expire(node, now);
     }
   }
 
-  /** Drains the read buffer up to an amortized threshold. */
+  /**
+   * Removes the expired entry unless it was concurrently removed or written.
+   *
+   * @param node the entry in the page replacement policy
+   * @param now the current time, in nanoseconds
+   * @return if the entry was retained because it was written concurrently
+   */
   @GuardedBy("evictionLock")
-  void drainReadBuffer(int bufferIndex) {
-    final long writeCount = readBufferWriteCount[bufferIndex].get();
-    for (int i = 0; i < READ_BUFFER_DRAIN_THRESHOLD; i++) {
-      final int index = (int) (readBufferReadCount[bufferIndex] & READ_BUFFER_INDEX_MASK);
-      final PaddedAtomicReference<Node<K, V>> slot = readBuffers[bufferIndex][index];
-      final Node<K, V> node = slot.get();
-      if (node == null) {
-        break;
+  boolean expire(Node<K, V> node, long now) {
+    final boolean alive;
+    final boolean expired;
+    synchronized (node) {
+      alive = node.isAlive();
+      expired = alive && hasExpired(node, now);
+      if (expired) {
+        node.weight = -node.weight;
       }
+    }
 
-      slot.lazySet(null);
-      applyRead(node);
-      readBufferReadCount[bufferIndex]++;
+    if (expired) {
+      if (data.remove(node.key, node)) {
+        if (recordsStats()) {
+          statsCounter.recordEviction(Math.abs(node.weight));
+        }
+        pendingNotifications.add(node);
+      }
+      policy.onRemove(node);
+      unlinkExpiration(node);
+      makeDead(node);
+      return false;
+    } else if (alive) {
+      // The entry was written since it was observed to have expired, so it
+      // will be reordered when the pending update is applied
+      reorderExpiration(node);
+      return true;
+    } else {
+      // The entry was removed and will leave the policy when the pending
+      // removal is applied
+      unlinkExpiration(node);
+      return false;
     }
-    readBufferDrainAtWriteCount[bufferIndex].lazySet(writeCount);
   }
 
-  /** Updates the node's location in the page replacement policy. */
+  /** Links the node to the back of the expiration deques and the timer wheel. */
   @GuardedBy("evictionLock")
-  void applyRead(Node<K, V> node) {
-    // An entry may be scheduled for reordering despite having been removed.
-    // This can occur when the entry was concurrently read while a writer was
-    // removing it. If the entry is no longer linked then it does not need to
-    // be processed.
-    if (evictionDeque.contains(node)) {
-      evictionDeque.moveToBack(node);
+  void linkExpiration(Node<K, V> node) {
+    if (expiresAfterAccess()) {
+      accessOrderDeque.add(node);
+    }
+    if (expiresAfterWrite()) {
+      writeOrderDeque.add(node);
+    }
+    if (expiresVariably()) {
+      timerWheel.schedule(node);
     }
   }
 
-  /** Drains the read buffer up to an amortized threshold. */
+  /** Moves the node to the back of the expiration deques and reschedules it, if linked. */
   @GuardedBy("evictionLock")
-  void drainWriteBuffer() {
-    for (int i = 0; i < WRITE_BUFFER_DRAIN_THRESHOLD; i++) {
-      final Runnable task = writeBuffer.poll();
-      if (task == null) {
-        break;
-      }
-      task.run();
+  void reorderExpiration(Node<K, V> node) {
+    if (expiresAfterAccess()) {
+      accessOrderDeque.moveToBack(node);
+    }
+    if (expiresAfterWrite()) {
+      writeOrderDeque.moveToBack(node);
+    }
+    if (expiresVariably()) {
+      timerWheel.reschedule(node);
+    }
+  }
+
+  /** Unlinks the node from the expiration deques and the timer wheel, if linked. */
+  @GuardedBy("evictionLock")
+  void unlinkExpiration(Node<K, V> node) {
+    if (expiresAfterAccess()) {
+      accessOrderDeque.remove(node);
+    }
+    if (expiresAfterWrite()) {
+      writeOrderDeque.remove(node);
+    }
+    if (expiresVariably()) {
+      timerWheel.deschedule(node);
     }
   }
 
   /**
-   * Attempts to transition the node from the <tt>alive</tt> state to the
-   * <tt>retired</tt> state.
+   * Schedules the entry to be reloaded if it was written longer ago than the
+   * refresh duration and a reload is not already in progress.
    *
-   * @param node the entry in the page replacement policy
-   * @param expect the expected weighted value
-   * @return if successful
+   * @param node the entry that was read
+   * @param now the current time, in nanoseconds
    */
-  boolean tryToRetire(Node<K, V> node, WeightedValue<V> expect) {
-    if (expect.isAlive()) {
-      final WeightedValue<V> retired = new WeightedValue<V>(expect.value, -expect.weight);
-      return node.compareAndSet(expect, retired);
+  void refreshIfNeeded(Node<K, V> node, long now) {
+    if (node.timing.refreshing || ((now - node.timing.writeTime) < refreshAfterWriteNanos)) {
+      return;
+    }
+
+    final V oldValue;
+    synchronized (node) {
+      if (!node.isAlive() || node.timing.refreshing
+          || ((now - node.timing.writeTime) < refreshAfterWriteNanos)) {
+        return;
+      }
+      node.timing.refreshing = true;
+      oldValue = node.value;
+    }
+
+    final Runnable task = new RefreshTask(node, oldValue);
+    try {
+      refreshExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
     }
-    return false;
   }
 
   /**
-   * Atomically transitions the node from the <tt>alive</tt> state to the
-   * <tt>retired</tt> state, if a valid transition.
+   * Replaces the entry's value with the reloaded value, unless the entry was
+   * written, removed or has expired since the reload began.
    *
-   * @param node the entry in the page replacement policy
+   * @param node the entry that was reloaded
+   * @param oldValue the value that the reload was computed from
+   * @param newValue the reloaded value
    */
-  void makeRetired(Node<K, V> node) {
-    for (;;) {
-      final WeightedValue<V> current = node.get();
-      if (!current.isAlive()) {
-        return;
-      }
-      final WeightedValue<V> retired = new WeightedValue<V>(current.value, -current.weight);
-      if (node.compareAndSet(current, retired)) {
+  void refresh(Node<K, V> node, V oldValue, V newValue) {
+    final int weight = weigher.weightOf(node.key, newValue);
+    final long now = ticker.read();
+
+    final int oldWeight;
+    synchronized (node) {
+      if (!node.isAlive() || (node.value != oldValue) || hasExpired(node, now)) {
         return;
       }
+      oldWeight = node.weight;
+      node.value = newValue;
+      node.weight = weight;
+      setWriteTime(node, Builder.UNSET_DURATION, false, now);
     }
+
+    afterUpdate(node, weight - oldWeight);
   }
 
   /**
-   * Atomically transitions the node to the <tt>dead</tt> state and decrements
-   * the <tt>weightedSize</tt>.
+   * Performs the post-processing work required after a read.
    *
    * @param node the entry in the page replacement policy
    */
-  @GuardedBy("evictionLock")
-  void makeDead(Node<K, V> node) {
-    for (;;) {
-      WeightedValue<V> current = node.get();
-      WeightedValue<V> dead = new WeightedValue<V>(current.value, 0);
-      if (node.compareAndSet(current, dead)) {
-        weightedSize.lazySet(weightedSize.get() - Math.abs(current.weight));
-        return;
-      }
+  void afterRead(Node<K, V> node) {
+    final long pending = recordAccess(node);
+    if (bufferReads) {
+      drainOnReadIfNeeded(pending);
+      notifyListener();
     }
   }
 
-  /** Notifies the listener of entries that were evicted. */
-  void notifyListener() {
-    Node<K, V> node;
-    while ((node = pendingNotifications.poll()) != null) {
-      listener.onEviction(node.key, node.getValue());
+  /**
+   * Records a read without attempting to drain the buffers.
+   *
+   * @param node the entry in the page replacement policy
+   * @return the number of pending reads on the chosen stripe, or a negative
+   *     value if the read was not buffered
+   */
+  long recordAccess(Node<K, V> node) {
+    if (!bufferReads) {
+      // The policy records the read directly on the entry, such as by setting
+      // a reference bit, so the read is not buffered and replayed
+      unbufferedReads.recordRead(node);
+      return -1L;
     }
+    return recordRead(node);
   }
 
-  /** Adds the node to the page replacement policy. */
-  final class AddTask implements Runnable {
-    final Node<K, V> node;
-    final int weight;
-
-    AddTask(Node<K, V> node, int weight) {
-      this.weight = weight;
-      this.node = node;
-    }
+  /**
+   * Records a read in the buffer and returns the number of reads pending on
+   * the chosen stripe.
+   *
+   * @param node the entry in the page replacement policy
+   * @return the number of pending reads on the chosen stripe, or a negative
+   *     value if the read was discarded due to contention
+   */
+  long recordRead(Node<K, V> node) {
+    // A stripe is chosen by the thread's probe, which is rehashed when the
+    // stripe is contended so that the threads spread out over the stripes. The
+    // table of stripes grows on contention, up to the number of CPUs, and a
+    // stripe is only allocated once a thread's probe selects it, so that a
+    // lightly used map stays small. If the thread cannot claim a slot after a
+    // few attempts then the read is discarded, as the buffer is lossy.
+    final int[] probe = PROBE.get();
+    int attempts = 0;
+    while (attempts < READ_BUFFER_ATTEMPTS) {
+      final ReadBuffer<Node<K, V>>[] buffers = readBuffers;
+      final int bufferIndex = (buffers == null) ? 0 : (probe[0] & (buffers.length - 1));
+      final ReadBuffer<Node<K, V>> buffer = (buffers == null) ? null : buffers[bufferIndex];
+      if (buffer == null) {
+        if (!createReadBuffer(buffers, bufferIndex)) {
+          attempts++;
+        }
+        continue;
+      }
 
-    @Override
-    @GuardedBy("evictionLock")
-    public void run() {
-      weightedSize.lazySet(weightedSize.get() + weight);
+      final long writeCount = buffer.writeCount.get();
+      if (buffer.writeCount.compareAndSet(writeCount, writeCount + 1)) {
+        // The slot may still be overwritten if the drain falls a lap behind
+        buffer.slots.lazySet(ReadBuffer.indexOf(writeCount), node);
+        return writeCount - buffer.drainAtWriteCount.get();
+      }
 
-      // ignore out-of-order write operations
-      if (node.get().isAlive()) {
-        evictionDeque.add(node);
-        evict();
+      attempts++;
+      probe[0] = rehash(probe[0]);
+      if (buffers.length < NUMBER_OF_READ_BUFFERS) {
+        expandReadBuffers(buffers);
       }
     }
+    if (recordsStats()) {
+      statsCounter.recordDroppedRead();
+    }
+    return -1;
   }
 
-  /** Removes a node from the page replacement policy. */
-  final class RemovalTask implements Runnable {
-    final Node<K, V> node;
-
-    RemovalTask(Node<K, V> node) {
-      this.node = node;
+  /**
+   * Allocates the read buffer stripe at the index, or the table of stripes if
+   * it has not been allocated yet, unless another thread is resizing it.
+   *
+   * @param buffers the table of stripes that was observed, or <tt>null</tt>
+   * @param bufferIndex the index of the stripe that was observed to be absent
+   * @return if the caller should retry immediately
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  boolean createReadBuffer(ReadBuffer<Node<K, V>>[] buffers, int bufferIndex) {
+    if (!readBuffersResizing.compareAndSet(false, true)) {
+      return false;
     }
-
-    @Override
-    @GuardedBy("evictionLock")
-    public void run() {
-      // add may not have been processed yet
-      evictionDeque.remove(node);
-      makeDead(node);
+    try {
+      if (readBuffers == buffers) {
+        if (buffers == null) {
+          readBuffers = new ReadBuffer[] { new ReadBuffer<Node<K, V>>() };
+        } else if (buffers[bufferIndex] == null) {
+          // Safely published to other readers by the stripe's final fields
+          buffers[bufferIndex] = new ReadBuffer<Node<K, V>>();
+        }
+      }
+      return true;
+    } finally {
+      readBuffersResizing.set(false);
     }
   }
 
-  /** Updates the weighted size and evicts an entry on overflow. */
-  final class UpdateTask implements Runnable {
-    final int weightDifference;
-    final Node<K, V> node;
+  /** Returns the next probe value using a xorshift generator. */
+  static int rehash(int probe) {
+    probe ^= probe << 13;
+    probe ^= probe >>> 17;
+    probe ^= probe << 5;
+    return probe;
+  }
 
-    public UpdateTask(Node<K, V> node, int weightDifference) {
-      this.weightDifference = weightDifference;
-      this.node = node;
+  /**
+   * Doubles the number of read buffer stripes unless another thread has
+   * already replaced the table or is in the process of doing so. The new
+   * stripes are allocated when a thread first selects them.
+   *
+   * @param buffers the table of stripes that was observed to be contended
+   */
+  @SuppressWarnings("unchecked")
+  void expandReadBuffers(ReadBuffer<Node<K, V>>[] buffers) {
+    if (!readBuffersResizing.compareAndSet(false, true)) {
+      return;
     }
-
-    @Override
-    @GuardedBy("evictionLock")
-    public void run() {
-      weightedSize.lazySet(weightedSize.get() + weightDifference);
-      applyRead(node);
-      evict();
+    try {
+      if (readBuffers == buffers) {
+        readBuffers = Arrays.copyOf(buffers, buffers.length << 1);
+      }
+    } finally {
+      readBuffersResizing.set(false);
     }
   }
 
-  /* ---------------- Concurrent Map Support -------------- */
-
-  @Override
-  public boolean isEmpty() {
-    return data.isEmpty();
+  /**
+   * Attempts to drain the buffers if it is determined to be needed when
+   * post-processing a read.
+   *
+   * @param pending the number of pending reads on the chosen stripe
+   */
+  void drainOnReadIfNeeded(long pending) {
+    final boolean delayable = (pending < READ_BUFFER_THRESHOLD);
+    final DrainStatus status = drainStatus.get();
+    if (status.shouldDrainBuffers(delayable)) {
+      scheduleDrainBuffers(true);
+    }
   }
 
-  @Override
-  public int size() {
-    return data.size();
+  /**
+   * Performs the post-processing work required after a write.
+   *
+   * @param node the entry in the page replacement policy
+   * @param operation the pending operation to be applied
+   * @param weight the weight, or change in weight, of the entry
+   */
+  void afterWrite(Node<K, V> node, int operation, int weight) {
+    recordWrite(node, operation, weight);
+    drainAfterWrite();
   }
 
   /**
-   * Returns the weighted size of this map.
+   * Records a write in the buffer without attempting to drain it, unless the
+   * buffer is full.
    *
-   * @return the combined weight of the values in this map
+   * @param node the entry in the page replacement policy
+   * @param operation the pending operation to be applied
+   * @param weight the weight, or change in weight, of the entry
    */
-  public long weightedSize() {
-    return Math.max(0, weightedSize.get());
+  void recordWrite(Node<K, V> node, int operation, int weight) {
+    while (!writeBuffer.offer(node, operation, weight)) {
+      // The buffer is full, so the writer is throttled by helping to drain it
+      evictionLock.lock();
+      final long lockedAt = startLockTimer();
+      try {
+        drainsAfterWrite++;
+        drainBuffersUnderLock();
+      } finally {
+        unlockEviction(lockedAt);
+      }
+    }
   }
 
-  @Override
-  public void clear() {
+  /**
+   * Attempts to drain the buffers now that writes are pending. A drain is
+   * repeated while writes are pending, so a batch of writes requires a single
+   * attempt rather than one per write.
+   */
+  void drainAfterWrite() {
+    scheduleAfterWrite();
+    notifyListener();
+  }
+
+  /**
+   * Publishes that a drain is required and schedules it, unless a drain is
+   * already in progress. The drain in progress either applies the write or,
+   * as the status is released before the buffer is checked, leaves a drain
+   * required when it completes.
+   */
+  void scheduleAfterWrite() {
+    for (;;) {
+      final DrainStatus status = drainStatus.get();
+      if (status == PROCESSING) {
+        return;
+      } else if ((status == REQUIRED) || drainStatus.compareAndSet(IDLE, REQUIRED)) {
+        scheduleDrainBuffers(false);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Performs the post-processing work required after an entry's value was
+   * replaced.
+   *
+   * @param node the entry in the page replacement policy
+   * @param weightDifference the change in the entry's weight
+   */
+  void afterUpdate(Node<K, V> node, int weightDifference) {
+    if (isUpdateRead(weightDifference)) {
+      afterRead(node);
+    } else {
+      afterWrite(node, UPDATE, weightDifference);
+    }
+  }
+
+  /**
+   * Records an update without attempting to drain the buffers, unless the
+   * write buffer is full.
+   *
+   * @param node the entry in the page replacement policy
+   * @param weightDifference the change in the entry's weight
+   */
+  void recordUpdate(Node<K, V> node, int weightDifference) {
+    if (isUpdateRead(weightDifference)) {
+      recordAccess(node);
+    } else {
+      recordWrite(node, UPDATE, weightDifference);
+    }
+  }
+
+  /** Returns if an update with the given change in weight is recorded as a read. */
+  boolean isUpdateRead(int weightDifference) {
+    // The write order must be maintained even if the weight is unchanged
+    return (weightDifference == 0) && !expiresAfterWrite() && !expiresVariably();
+  }
+
+  /**
+   * Attempts to acquire the eviction lock and schedule the pending operations
+   * to be applied to the page replacement policy. The operations are applied
+   * by the executor, which by default runs them on the calling thread, or by
+   * the calling thread if it is rejected.
+   *
+   * @param afterRead if the drain was prompted by a read rather than a write
+   */
+  void scheduleDrainBuffers(boolean afterRead) {
+    for (int i = 0; i < MAXIMUM_DRAIN_ATTEMPTS; i++) {
+      if ((drainStatus.get() == PROCESSING) || !evictionLock.tryLock()) {
+        return;
+      }
+      final long lockedAt = startLockTimer();
+      try {
+        // Only the thread that moves the status to processing schedules the
+        // task, and the status remains processing until the task has run
+        if (drainStatus.get() == PROCESSING) {
+          return;
+        }
+        if (afterRead) {
+          drainsAfterRead++;
+        } else {
+          drainsAfterWrite++;
+        }
+        drainStatus.set(PROCESSING);
+        executor.execute(drainBuffersTask);
+      } catch (RejectedExecutionException e) {
+        drainBuffersUnderLock();
+      } catch (RuntimeException e) {
+        // The write was already applied to the hash table, so the caller is
+        // not failed and the drain is performed here to reset the status
+        logger.log(Level.WARNING, "Exception thrown when scheduling the drain", e);
+        drainBuffersUnderLock();
+      } finally {
+        unlockEviction(lockedAt);
+      }
+
+      // A writer that failed to acquire the lock while the drain ran on this
+      // thread left a drain required, which is retried now that it is released
+      if (drainStatus.get() != REQUIRED) {
+        return;
+      }
+      afterRead = false;
+    }
+  }
+
+  /**
+   * Drains the buffers while publishing that a drain is in progress. The
+   * drain is repeated while writes are pending, up to a full write buffer, so
+   * that a burst of writes is not left unapplied.
+   */
+  @GuardedBy("evictionLock")
+  void drainBuffersUnderLock() {
+    drainStatus.set(PROCESSING);
+    try {
+      int drains = 0;
+      do {
+        drainBuffers();
+      } while ((writeBuffer.size() > 0) && (++drains < MAXIMUM_DRAIN_ATTEMPTS));
+    } finally {
+      drainStatus.compareAndSet(PROCESSING, IDLE);
+      if (writeBuffer.size() > 0) {
+        drainStatus.compareAndSet(IDLE, REQUIRED);
+      }
+    }
+  }
+
+  /** Drains the read and write buffers up to an amortized threshold. */
+  @GuardedBy("evictionLock")
+  void drainBuffers() {
+    final long start = recordsStats() ? System.nanoTime() : 0L;
+    drainReadBuffers();
+    drainWriteBuffer();
+    expireEntries();
+    if (recordsStats()) {
+      statsCounter.recordDrain(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Returns the time that the eviction lock was acquired if the hold should be
+   * timed, which is only the outermost hold when the statistics are recorded.
+   */
+  @GuardedBy("evictionLock")
+  long startLockTimer() {
+    return (recordsStats() && (evictionLock.getHoldCount() == 1)) ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Releases the eviction lock, recording how long it was held if the hold
+   * was timed.
+   *
+   * @param lockedAt the time that the lock was acquired, or zero if untimed
+   */
+  @GuardedBy("evictionLock")
+  void unlockEviction(long lockedAt) {
+    if (lockedAt != 0L) {
+      lockHoldCount++;
+      totalLockHoldTime += Math.max(0L, System.nanoTime() - lockedAt);
+    }
+    evictionLock.unlock();
+  }
+
+  /** Drains the read buffers, each up to an amortized threshold. */
+  @GuardedBy("evictionLock")
+  void drainReadBuffers() {
+    final ReadBuffer<Node<K, V>>[] buffers = readBuffers;
+    if (buffers == null) {
+      return;
+    }
+    final int mask = buffers.length - 1;
+    final int start = (int) Thread.currentThread().getId();
+    final int end = start + buffers.length;
+    for (int i = start; i < end; i++) {
+      final ReadBuffer<Node<K, V>> buffer = buffers[i & mask];
+      if (buffer != null) {
+        drainReadBuffer(buffer);
+      }
+    }
+  }
+
+  /** Drains the read buffer up to an amortized threshold. */
+  @GuardedBy("evictionLock")
+  void drainReadBuffer(ReadBuffer<Node<K, V>> buffer) {
+    final long writeCount = buffer.writeCount.get();
+    for (int i = 0; i < READ_BUFFER_DRAIN_THRESHOLD; i++) {
+      final int index = ReadBuffer.indexOf(buffer.readCount);
+      final Node<K, V> node = buffer.slots.get(index);
+      if (node == null) {
+        buffer.drainAtWriteCount.lazySet(writeCount);
+        return;
+      }
+
+      buffer.slots.lazySet(index, null);
+      applyRead(node);
+      buffer.readCount++;
+    }
+
+    // The remaining reads are left for the next drain and may be overwritten
+    // if the readers lap the ring before then
+    readDrainsAtThreshold++;
+    buffer.drainAtWriteCount.lazySet(writeCount);
+  }
+
+  /** Updates the node's location in the page replacement policy. */
+  @GuardedBy("evictionLock")
+  void applyRead(Node<K, V> node) {
+    // An entry may be scheduled for reordering despite having been removed.
+    // This can occur when the entry was concurrently read while a writer was
+    // removing it, so the policy ignores entries that it no longer tracks.
+    policy.onAccess(node);
+    if (expiresAfterAccess()) {
+      accessOrderDeque.moveToBack(node);
+    }
+    if (expiresVariably()) {
+      timerWheel.reschedule(node);
+    }
+  }
+
+  /** Drains the write buffer up to an amortized threshold. */
+  @GuardedBy("evictionLock")
+  void drainWriteBuffer() {
+    final int depth = writeBuffer.size();
+    writeBufferDrains++;
+    totalWriteBufferDepth += depth;
+    maxWriteBufferDepth = Math.max(maxWriteBufferDepth, depth);
+    writeBuffer.drainTo(writeConsumer, WRITE_BUFFER_DRAIN_THRESHOLD);
+  }
+
+  /**
+   * Atomically transitions the node from the <tt>alive</tt> state to the
+   * <tt>retired</tt> state, if a valid transition.
+   *
+   * @param node the entry in the page replacement policy
+   */
+  void makeRetired(Node<K, V> node) {
+    synchronized (node) {
+      if (node.isAlive()) {
+        node.weight = -node.weight;
+      }
+    }
+  }
+
+  /**
+   * Atomically transitions the node to the <tt>dead</tt> state and decrements
+   * the <tt>weightedSize</tt>.
+   *
+   * @param node the entry in the page replacement policy
+   */
+  @GuardedBy("evictionLock")
+  void makeDead(Node<K, V> node) {
+    synchronized (node) {
+      weightedSize.lazySet(weightedSize.get() - Math.abs(node.weight));
+      node.weight = 0;
+    }
+  }
+
+  /** Notifies the listener of entries that were evicted. */
+  void notifyListener() {
+    if (batchNotifier != null) {
+      batchNotifier.scheduleIfPending();
+      return;
+    }
+
+    Node<K, V> node;
+    while ((node = pendingNotifications.poll()) != null) {
+      listener.onEviction(node.key, node.getValue());
+    }
+  }
+
+  /** Adds the node to the page replacement policy. */
+  @GuardedBy("evictionLock")
+  void applyAdd(Node<K, V> node, int weight) {
+    weightedSize.lazySet(weightedSize.get() + weight);
+
+    // ignore out-of-order write operations
+    if (node.isAlive()) {
+      policy.onAdd(node, weight);
+      linkExpiration(node);
+      evict();
+    }
+  }
+
+  /** Removes a node from the page replacement policy. */
+  @GuardedBy("evictionLock")
+  void applyRemoval(Node<K, V> node) {
+    // add may not have been processed yet
+    policy.onRemove(node);
+    unlinkExpiration(node);
+    makeDead(node);
+  }
+
+  /** Updates the weighted size and evicts an entry on overflow. */
+  @GuardedBy("evictionLock")
+  void applyUpdate(Node<K, V> node, int weightDifference) {
+    weightedSize.lazySet(weightedSize.get() + weightDifference);
+    policy.onUpdate(node, weightDifference);
+    reorderExpiration(node);
+    evict();
+  }
+
+  /** A task that drains the buffers on the map's executor. */
+  final class DrainBuffersTask implements Runnable {
+
+    @Override
+    public void run() {
+      evictionLock.lock();
+      final long lockedAt = startLockTimer();
+      try {
+        drainBuffersUnderLock();
+      } finally {
+        unlockEviction(lockedAt);
+      }
+
+      // When run asynchronously the task reschedules itself if writes that
+      // arrived while it held the lock are still pending
+      if (!evictionLock.isHeldByCurrentThread() && (drainStatus.get() == REQUIRED)) {
+        scheduleDrainBuffers(false);
+      }
+    }
+  }
+
+  /** A task that reloads an entry's value on the refresh executor. */
+  final class RefreshTask implements Runnable {
+    final Node<K, V> node;
+    final V oldValue;
+
+    RefreshTask(Node<K, V> node, V oldValue) {
+      this.oldValue = oldValue;
+      this.node = node;
+    }
+
+    @Override
+    public void run() {
+      try {
+        final V newValue = reloader.reload(node.key, oldValue);
+        if (newValue != null) {
+          refresh(node, oldValue, newValue);
+        }
+      } catch (Exception e) {
+        // The current value is retained and the next read will try again
+        logger.log(Level.WARNING, "Exception thrown when reloading " + node.key, e);
+      } finally {
+        node.timing.refreshing = false;
+      }
+    }
+  }
+
+  /**
+   * Delivers the evicted entries to a batch listener on an executor. At most
+   * one delivery task is scheduled at a time and it drains the pending
+   * notifications in batches until none remain.
+   */
+  final class BatchNotifier implements Runnable {
+    final BatchEvictionListener<K, V> listener;
+    final AtomicBoolean scheduled;
+    final Executor executor;
+
+    BatchNotifier(BatchEvictionListener<K, V> listener, Executor executor) {
+      this.scheduled = new AtomicBoolean();
+      this.executor = executor;
+      this.listener = listener;
+    }
+
+    /** Schedules the delivery if entries are pending and it is not scheduled. */
+    void scheduleIfPending() {
+      if (pendingNotifications.isEmpty() || !scheduled.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        run();
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        List<Entry<K, V>> batch;
+        while (!(batch = nextBatch()).isEmpty()) {
+          listener.onEviction(batch);
+        }
+      } finally {
+        // An entry may have been added after the last batch was taken and
+        // before the flag was cleared, so check again to not strand it
+        scheduled.set(false);
+        scheduleIfPending();
+      }
+    }
+
+    /** Returns the next batch of pending notifications, which may be empty. */
+    List<Entry<K, V>> nextBatch() {
+      final List<Entry<K, V>> batch = new ArrayList<Entry<K, V>>();
+      Node<K, V> node;
+      while ((batch.size() < NOTIFICATION_BATCH_SIZE)
+          && ((node = pendingNotifications.poll()) != null)) {
+        batch.add(new SimpleImmutableEntry<K, V>(node.key, node.getValue()));
+      }
+      return unmodifiableList(batch);
+    }
+  }
+
+  /** Applies the operations recorded in the write buffer. */
+  final class WriteConsumer implements WriteBuffer.Consumer<Node<K, V>> {
+
+    @Override
+    @GuardedBy("evictionLock")
+    public void accept(Node<K, V> node, int operation, int weight) {
+      switch (operation) {
+        case ADD:
+          applyAdd(node, weight);
+          break;
+        case REMOVE:
+          applyRemoval(node);
+          break;
+        case UPDATE:
+          applyUpdate(node, weight);
+          break;
+        default:
+          throw new AssertionError();
+      }
+    }
+  }
+
+  /* ---------------- Concurrent Map Support -------------- */
+
+  @Override
+  public boolean isEmpty() {
+    return data.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return data.size();
+  }
+
+  /**
+   * Returns the weighted size of this map.
+   *
+   * @return the combined weight of the values in this map
+   */
+  public long weightedSize() {
+    return Math.max(0, weightedSize.get());
+  }
+
+  /**
+   * Returns a snapshot of the statistics that have been recorded since the map
+   * was created. If the map was not built with
+   * {@link Builder#recordStats()} then the statistics are all zero.
+   *
+   * @return a snapshot of the map's statistics
+   */
+  public CacheStats stats() {
+    return recordsStats() ? statsCounter.snapshot() : CacheStats.EMPTY;
+  }
+
+  /**
+   * Returns a snapshot of how the read and write buffers have been drained
+   * since the map was created. This is a diagnostic view of the map's
+   * internals, intended for judging whether the policy is losing access
+   * information under load, and it may change as the internals evolve.
+   * <p>
+   * The snapshot is taken while holding the lock that the buffers are drained
+   * under, so it should not be polled at a high rate. The dropped reads and
+   * the lock hold times are only counted if the map was built with
+   * {@link Builder#recordStats()}.
+   *
+   * @return a snapshot of the buffer statistics
+   */
+  public BufferStats bufferStats() {
     evictionLock.lock();
+    try {
+      long recordedReads = 0L;
+      long appliedReads = 0L;
+      long pendingReads = 0L;
+      final ReadBuffer<Node<K, V>>[] buffers = readBuffers;
+      if (buffers != null) {
+        for (ReadBuffer<Node<K, V>> buffer : buffers) {
+          if (buffer == null) {
+            continue;
+          }
+          recordedReads += buffer.writeCount.get();
+          appliedReads += buffer.readCount;
+          for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            if (buffer.slots.get(ReadBuffer.indexOf(i)) != null) {
+              pendingReads++;
+            }
+          }
+        }
+      }
+      // A claimed slot that was overwritten before it was drained is lost, as
+      // every other recorded read was either applied, is pending or was cleared
+      final long overwrittenReads =
+          Math.max(0L, recordedReads - appliedReads - pendingReads - clearedReads);
+      final long droppedReads = recordsStats() ? statsCounter.droppedReads() : 0L;
+      return new BufferStats(recordedReads, appliedReads, pendingReads, overwrittenReads,
+          droppedReads, readDrainsAtThreshold, drainsAfterRead, drainsAfterWrite, writeBufferDrains,
+          totalWriteBufferDepth, maxWriteBufferDepth, lockHoldCount, totalLockHoldTime);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    final long lockedAt = startLockTimer();
     try {
       // Discard all entries
       Node<K, V> node;
-      while ((node = evictionDeque.poll()) != null) {
+      while ((node = (Node<K, V>) policy.selectVictim()) != null) {
         data.remove(node.key, node);
         makeDead(node);
       }
+      accessOrderDeque.clear();
+      writeOrderDeque.clear();
+      if (expiresVariably()) {
+        timerWheel.clear();
+      }
 
       // Discard all pending reads
-      for (AtomicReference<Node<K, V>>[] buffer : readBuffers) {
-        for (AtomicReference<Node<K, V>> slot : buffer) {
-          slot.lazySet(null);
+      final ReadBuffer<Node<K, V>>[] buffers = readBuffers;
+      if (buffers != null) {
+        for (ReadBuffer<Node<K, V>> buffer : buffers) {
+          if (buffer != null) {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+              if (buffer.slots.get(ReadBuffer.indexOf(i)) != null) {
+                buffer.slots.lazySet(ReadBuffer.indexOf(i), null);
+                clearedReads++;
+              }
+            }
+          }
         }
       }
 
       // Apply all pending writes
-      Runnable task;
-      while ((task = writeBuffer.poll()) != null) {
-        task.run();
-      }
+      writeBuffer.drainTo(writeConsumer, Integer.MAX_VALUE);
     } finally {
-      evictionLock.unlock();
+      unlockEviction(lockedAt);
     }
   }
 
   @Override
   public boolean containsKey(Object key) {
-    return data.containsKey(key);
+    final Node<K, V> node = data.get(key);
+    return (node != null) && !(expires() && hasExpired(node, ticker.read()));
   }
 
   @Override
   public boolean containsValue(Object value) {
     checkNotNull(value);
 
+    final long now = expires() ? ticker.read() : 0L;
     for (Node<K, V> node : data.values()) {
-      if (node.getValue().equals(value)) {
+      if (node.getValue().equals(value) && !hasExpired(node, now)) {
         return true;
       }
     }
@@ -671,8 +1554,30 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   public V get(Object key) {
     final Node<K, V> node = data.get(key);
     if (node == null) {
+      if (recordsStats()) {
+        statsCounter.recordMisses(1);
+      }
       return null;
     }
+    if (recordsTime()) {
+      final long now = ticker.read();
+      if (hasExpired(node, now)) {
+        if (recordsStats()) {
+          statsCounter.recordMisses(1);
+        }
+        // The entry is absent, so prompt its removal rather than recording it
+        scheduleDrainBuffers(true);
+        notifyListener();
+        return null;
+      }
+      setAccessTime(node, now);
+      if (refreshesAfterWrite()) {
+        refreshIfNeeded(node, now);
+      }
+    }
+    if (recordsStats()) {
+      statsCounter.recordHits(1);
+    }
     afterRead(node);
     return node.getValue();
   }
@@ -690,7 +1595,9 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
    */
   public V getQuietly(Object key) {
     final Node<K, V> node = data.get(key);
-    return (node == null) ? null : node.getValue();
+    return ((node == null) || (expires() && hasExpired(node, ticker.read())))
+        ? null
+        : node.getValue();
   }
 
   @Override
@@ -698,11 +1605,58 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     return put(key, value, false);
   }
 
+  /**
+   * Associates the specified value with the specified key in this map, where
+   * the entry expires once the duration has elapsed rather than the duration
+   * specified by the map's {@link Expiry}. A later write or read of the entry
+   * may change its lifetime as determined by the expiry.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param value value to be associated with the specified key
+   * @param duration the length of time after which the entry expires
+   * @param unit the unit that <tt>duration</tt> is expressed in
+   * @return the previous value associated with the specified key, or
+   *     <tt>null</tt> if there was no mapping for the key
+   * @throws IllegalArgumentException if the duration is negative
+   * @throws IllegalStateException if the map was not built with an expiry
+   * @throws NullPointerException if the key, value or unit is null
+   */
+  public V put(K key, V value, long duration, TimeUnit unit) {
+    return put(key, value, toNanos(duration, unit), false);
+  }
+
   @Override
   public V putIfAbsent(K key, V value) {
     return put(key, value, true);
   }
 
+  /**
+   * If the specified key is not already associated with a value, associates
+   * it with the given value, where the entry expires once the duration has
+   * elapsed rather than the duration specified by the map's {@link Expiry}.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param value value to be associated with the specified key
+   * @param duration the length of time after which the entry expires
+   * @param unit the unit that <tt>duration</tt> is expressed in
+   * @return the previous value associated with the specified key, or
+   *     <tt>null</tt> if there was no mapping for the key
+   * @throws IllegalArgumentException if the duration is negative
+   * @throws IllegalStateException if the map was not built with an expiry
+   * @throws NullPointerException if the key, value or unit is null
+   */
+  public V putIfAbsent(K key, V value, long duration, TimeUnit unit) {
+    return put(key, value, toNanos(duration, unit), true);
+  }
+
+  /** Returns the entry's lifetime in nanoseconds, if the map expires variably. */
+  long toNanos(long duration, TimeUnit unit) {
+    checkNotNull(unit);
+    checkArgument(duration >= 0);
+    checkState(expiresVariably());
+    return unit.toNanos(duration);
+  }
+
   /**
    * Adds a node to the list and the data store. If an existing node is found,
    * then its value is updated if allowed.
@@ -714,136 +1668,628 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
    * @return the prior value in the data store or null if no mapping was found
    */
   V put(K key, V value, boolean onlyIfAbsent) {
+    return put(key, value, Builder.UNSET_DURATION, onlyIfAbsent);
+  }
+
+  /**
+   * Adds a node to the list and the data store. If an existing node is found,
+   * then its value is updated if allowed.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param value value to be associated with the specified key
+   * @param duration the entry's lifetime in nanoseconds, or negative if the
+   *     expiry determines it
+   * @param onlyIfAbsent a write is performed only if the key is not already
+   *     associated with a value
+   * @return the prior value in the data store or null if no mapping was found
+   */
+  V put(K key, V value, long duration, boolean onlyIfAbsent) {
+    return put(key, value, duration, onlyIfAbsent, false);
+  }
+
+  /**
+   * Adds a node to the list and the data store. If an existing node is found,
+   * then its value is updated if allowed. A batched write is recorded in the
+   * buffers without attempting to drain them, which the caller is expected to
+   * do once the batch is complete.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param value value to be associated with the specified key
+   * @param duration the entry's lifetime in nanoseconds, or negative if the
+   *     expiry determines it
+   * @param onlyIfAbsent a write is performed only if the key is not already
+   *     associated with a value
+   * @param batched if the buffers should not be drained
+   * @return the prior value in the data store or null if no mapping was found
+   */
+  V put(K key, V value, long duration, boolean onlyIfAbsent, boolean batched) {
     checkNotNull(key);
     checkNotNull(value);
 
     final int weight = weigher.weightOf(key, value);
-    final WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
-    final Node<K, V> node = new Node<K, V>(key, weightedValue);
+    final long now = recordsTime() ? ticker.read() : 0L;
+    Node<K, V> node = null;
+
+    for (;;) {
+      Node<K, V> prior = data.get(key);
+      if (prior == null) {
+        if (node == null) {
+          node = newNode(key, value, weight, now);
+          if (expiresVariably()) {
+            setWriteTime(node, duration, true, now);
+          }
+        }
+        prior = data.putIfAbsent(key, node);
+        if (prior == null) {
+          if (recordsStats()) {
+            statsCounter.recordPut();
+          }
+          if (batched) {
+            recordWrite(node, ADD, weight);
+          } else {
+            afterWrite(node, ADD, weight);
+          }
+          return null;
+        }
+      }
+      if (onlyIfAbsent && !hasExpired(prior, now)) {
+        if (expires()) {
+          setAccessTime(prior, now);
+        }
+        if (batched) {
+          recordAccess(prior);
+        } else {
+          afterRead(prior);
+        }
+        return prior.getValue();
+      }
+
+      // An expired entry is replaced as if it were absent
+      final V oldValue;
+      final int oldWeight;
+      final boolean expired;
+      synchronized (prior) {
+        if (!prior.isAlive()) {
+          continue;
+        }
+        expired = hasExpired(prior, now);
+        oldValue = prior.value;
+        oldWeight = prior.weight;
+        if (expired || !onlyIfAbsent) {
+          prior.value = value;
+          prior.weight = weight;
+          if (recordsTime()) {
+            setWriteTime(prior, duration, expired, now);
+          }
+        }
+      }
 
+      if (onlyIfAbsent && !expired) {
+        // The entry was written after it was observed to have expired
+        if (batched) {
+          recordAccess(prior);
+        } else {
+          afterRead(prior);
+        }
+        return oldValue;
+      }
+      if (recordsStats()) {
+        statsCounter.recordPut();
+      }
+      if (batched) {
+        recordUpdate(prior, weight - oldWeight);
+      } else {
+        afterUpdate(prior, weight - oldWeight);
+      }
+      return expired ? null : oldValue;
+    }
+  }
+
+  @Override
+  public V remove(Object key) {
+    final Node<K, V> node = data.remove(key);
+    if (node == null) {
+      return null;
+    }
+
+    makeRetired(node);
+    afterWrite(node, REMOVE, 0);
+    return (expires() && hasExpired(node, ticker.read())) ? null : node.getValue();
+  }
+
+  /**
+   * Returns the mappings of the specified keys that are present in this map.
+   * The reads are recorded with the page replacement policy as a batch, so
+   * that a drain is attempted at most once rather than for each key.
+   *
+   * @param keys the keys whose associated values are to be returned
+   * @return an unmodifiable map of the keys that are present to their values,
+   *     in the order of the keys
+   * @throws NullPointerException if the keys or any of the keys are null
+   */
+  public Map<K, V> getAll(Iterable<? extends K> keys) {
+    checkNotNull(keys);
+    final Map<K, V> result = new LinkedHashMap<K, V>();
+    getAllPresent(keys, result);
+    return unmodifiableMap(result);
+  }
+
+  /**
+   * Returns the mappings of the specified keys, loading the absent keys with
+   * a single call to the loader. The loaded entries are added only if the key
+   * remains absent, and the reads and writes are recorded with the page
+   * replacement policy as two batches, so that a drain is attempted once for
+   * the reads and once for the writes, unless the write buffer fills, rather
+   * than for each key.
+   *
+   * @param keys the keys whose associated values are to be returned
+   * @param loader the function that computes the values of the absent keys,
+   *     which may omit the keys that it cannot load
+   * @return an unmodifiable map of the keys to their values, in the order of
+   *     the keys, which excludes the keys that were not loaded
+   * @throws NullPointerException if the keys, any of the keys or the loader
+   *     is null, or if the loader computes a null key or value
+   */
+  public Map<K, V> getAll(Iterable<? extends K> keys,
+      Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> loader) {
+    checkNotNull(keys);
+    checkNotNull(loader);
+
+    final Map<K, V> result = new LinkedHashMap<K, V>();
+    final Set<K> absent = getAllPresent(keys, result);
+    if (absent.isEmpty()) {
+      return unmodifiableMap(result);
+    }
+
+    final Map<? extends K, ? extends V> loaded = loader.apply(unmodifiableSet(absent));
+    final Map<K, V> found = new HashMap<K, V>();
+    for (Entry<? extends K, ? extends V> entry : loaded.entrySet()) {
+      final V prior = put(entry.getKey(), entry.getValue(), Builder.UNSET_DURATION, true, true);
+      found.put(entry.getKey(), (prior == null) ? entry.getValue() : prior);
+    }
+    drainAfterWrite();
+
+    // Restore the order of the keys, which were only partially present
+    final Map<K, V> ordered = new LinkedHashMap<K, V>();
+    for (K key : keys) {
+      V value = result.get(key);
+      if (value == null) {
+        value = found.get(key);
+      }
+      if (value != null) {
+        ordered.put(key, value);
+      }
+    }
+    return unmodifiableMap(ordered);
+  }
+
+  /**
+   * Adds the present mappings of the keys to the result and records the reads
+   * as a batch.
+   *
+   * @param keys the keys whose associated values are to be returned
+   * @param result the map that the present keys and their values are added to
+   * @return the keys that are absent
+   */
+  Set<K> getAllPresent(Iterable<? extends K> keys, Map<K, V> result) {
+    final long now = recordsTime() ? ticker.read() : 0L;
+    final Set<K> absent = new LinkedHashSet<K>();
+    boolean expired = false;
+    long pending = -1L;
+    int misses = 0;
+    int hits = 0;
+
+    for (K key : keys) {
+      final Node<K, V> node = data.get(key);
+      if (node == null) {
+        absent.add(key);
+        misses++;
+        continue;
+      } else if (hasExpired(node, now)) {
+        expired = true;
+        absent.add(key);
+        misses++;
+        continue;
+      }
+
+      if (recordsTime()) {
+        setAccessTime(node, now);
+        if (refreshesAfterWrite()) {
+          refreshIfNeeded(node, now);
+        }
+      }
+      pending = Math.max(pending, recordAccess(node));
+      result.put(key, node.getValue());
+      hits++;
+    }
+    if (recordsStats()) {
+      statsCounter.recordHits(hits);
+      statsCounter.recordMisses(misses);
+    }
+
+    if (expired) {
+      // Prompt the removal of the expired entries rather than waiting
+      scheduleDrainBuffers(true);
+    } else if (bufferReads && !result.isEmpty()) {
+      drainOnReadIfNeeded(pending);
+    }
+    notifyListener();
+    return absent;
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> map) {
+    checkNotNull(map);
+    if (map.isEmpty()) {
+      return;
+    }
+    for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+      put(entry.getKey(), entry.getValue(), Builder.UNSET_DURATION, false, true);
+    }
+    drainAfterWrite();
+  }
+
+  /**
+   * Removes the mappings of the specified keys from this map, if present. The
+   * removals are recorded with the page replacement policy as a batch, so that
+   * a drain is attempted once, unless the write buffer fills, rather than for
+   * each key.
+   *
+   * @param keys the keys whose mappings are to be removed
+   * @throws NullPointerException if the keys or any of the keys are null
+   */
+  public void removeAll(Iterable<?> keys) {
+    checkNotNull(keys);
+    int removed = 0;
+    for (Object key : keys) {
+      final Node<K, V> node = data.remove(key);
+      if (node != null) {
+        makeRetired(node);
+        recordWrite(node, REMOVE, 0);
+        removed++;
+      }
+    }
+    if (removed > 0) {
+      drainAfterWrite();
+    }
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    final Node<K, V> node = data.get(key);
+    if ((node == null) || (value == null)) {
+      return false;
+    }
+
+    synchronized (node) {
+      if (!node.isAlive() || !node.contains(value)
+          || (expires() && hasExpired(node, ticker.read()))) {
+        return false;
+      }
+      node.weight = -node.weight;
+    }
+    if (data.remove(key, node)) {
+      afterWrite(node, REMOVE, 0);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    checkNotNull(key);
+    checkNotNull(value);
+
+    final int weight = weigher.weightOf(key, value);
+    final long now = recordsTime() ? ticker.read() : 0L;
+
+    final Node<K, V> node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+
+    final V oldValue;
+    final int oldWeight;
+    synchronized (node) {
+      if (!node.isAlive() || hasExpired(node, now)) {
+        return null;
+      }
+      oldValue = node.value;
+      oldWeight = node.weight;
+      node.value = value;
+      node.weight = weight;
+      if (recordsTime()) {
+        setWriteTime(node, Builder.UNSET_DURATION, false, now);
+      }
+    }
+
+    afterUpdate(node, weight - oldWeight);
+    return oldValue;
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    checkNotNull(key);
+    checkNotNull(oldValue);
+    checkNotNull(newValue);
+
+    final int weight = weigher.weightOf(key, newValue);
+    final long now = recordsTime() ? ticker.read() : 0L;
+
+    final Node<K, V> node = data.get(key);
+    if (node == null) {
+      return false;
+    }
+
+    final int oldWeight;
+    synchronized (node) {
+      if (!node.isAlive() || hasExpired(node, now) || !node.contains(oldValue)) {
+        return false;
+      }
+      oldWeight = node.weight;
+      node.value = newValue;
+      node.weight = weight;
+      if (recordsTime()) {
+        setWriteTime(node, Builder.UNSET_DURATION, false, now);
+      }
+    }
+
+    afterUpdate(node, weight - oldWeight);
+    return true;
+  }
+
+  /**
+   * Returns the value to which the specified key is mapped, loading it with
+   * the given function and entering it into this map, unless <tt>null</tt>,
+   * if the key is absent. The entire method invocation is performed
+   * atomically, so concurrent callers for the same key wait for a single load
+   * rather than each computing the value. Some attempted update operations on
+   * this map by other threads may be blocked while the load is in progress, so
+   * the load should be short and simple, and must not attempt to update any
+   * other mappings of this map.
+   *
+   * @param key the key whose associated value is to be returned
+   * @param loader the function that computes the value if the key is absent
+   * @return the current (existing or loaded) value associated with the key,
+   *     or <tt>null</tt> if the loaded value is null
+   * @throws NullPointerException if the key or loader is null
+   */
+  public V get(K key, final Function<? super K, ? extends V> loader) {
+    checkNotNull(key);
+    checkNotNull(loader);
+
+    // An entry that is present is read without locking its bin
+    final long now = recordsTime() ? ticker.read() : 0L;
+    final Node<K, V> node = data.get(key);
+    if ((node != null) && !hasExpired(node, now)) {
+      if (recordsStats()) {
+        statsCounter.recordHits(1);
+      }
+      return afterComputeRead(node, now);
+    }
+
+    return remap(key, new BiFunction<K, V, V>() {
+      @Override public V apply(K k, V oldValue) {
+        return loader.apply(k);
+      }
+    }, true, false);
+  }
+
+  /**
+   * If the value for the specified key is present, attempts to compute a new
+   * mapping given the key and its current mapped value. If the function
+   * returns <tt>null</tt> then the mapping is removed. The entire method
+   * invocation is performed atomically, with the same restrictions on the
+   * function as {@link #get(Object, Function)}.
+   *
+   * @param key key with which a value may be associated
+   * @param remappingFunction the function to compute a value
+   * @return the new value associated with the specified key, or <tt>null</tt>
+   *     if none
+   * @throws NullPointerException if the key or remappingFunction is null
+   */
+  public V remapIfPresent(K key,
+      BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    checkNotNull(key);
+    checkNotNull(remappingFunction);
+    return remap(key, remappingFunction, false, true);
+  }
+
+  /**
+   * Attempts to compute a mapping for the specified key and its current
+   * mapped value, or <tt>null</tt> if there is no current mapping. If the
+   * function returns <tt>null</tt> then the mapping is removed, or remains
+   * absent. The entire method invocation is performed atomically, with the
+   * same restrictions on the function as {@link #get(Object, Function)}.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param remappingFunction the function to compute a value
+   * @return the new value associated with the specified key, or <tt>null</tt>
+   *     if none
+   * @throws NullPointerException if the key or remappingFunction is null
+   */
+  public V remap(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+    checkNotNull(key);
+    checkNotNull(remappingFunction);
+    return remap(key, remappingFunction, false, false);
+  }
+
+  /**
+   * If the specified key is not already associated with a value, associates
+   * it with the given value. Otherwise, replaces the value with the results of
+   * the given remapping function, or removes the mapping if the result is
+   * <tt>null</tt>. The entire method invocation is performed atomically, with
+   * the same restrictions on the function as {@link #get(Object, Function)}.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param value the value to use if absent
+   * @param remappingFunction the function to recompute a value if present
+   * @return the new value associated with the specified key, or <tt>null</tt>
+   *     if none
+   * @throws NullPointerException if the key, value or remappingFunction is
+   *     null
+   */
+  public V mergeValue(K key, final V value,
+      final BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    checkNotNull(key);
+    checkNotNull(value);
+    checkNotNull(remappingFunction);
+    return remap(key, new BiFunction<K, V, V>() {
+      @Override public V apply(K k, V oldValue) {
+        return (oldValue == null) ? value : remappingFunction.apply(oldValue, value);
+      }
+    }, false, false);
+  }
+
+  /**
+   * Computes the mapping for the key while holding the lock of the hash
+   * table's bin, so that the function is applied at most once per key and
+   * concurrent computations for that key wait for the result. The change is
+   * then recorded with the page replacement policy like any other write.
+   *
+   * @param key key with which the specified value is to be associated
+   * @param remappingFunction the function to compute a value
+   * @param onlyIfAbsent if the function is applied only when the key is absent
+   * @param onlyIfPresent if the function is applied only when the key is present
+   * @return the new value associated with the specified key, or <tt>null</tt>
+   *     if none
+   */
+  V remap(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction,
+      boolean onlyIfAbsent, boolean onlyIfPresent) {
+    final long now = recordsTime() ? ticker.read() : 0L;
     for (;;) {
-      final Node<K, V> prior = data.putIfAbsent(node.key, node);
-      if (prior == null) {
-        afterWrite(new AddTask(node, weight));
-        return null;
-      } else if (onlyIfAbsent) {
-        afterRead(prior);
-        return prior.getValue();
+      final Remapping remapping =
+          new Remapping(remappingFunction, onlyIfAbsent, onlyIfPresent, now);
+      data.compute(key, remapping);
+      if (remapping.retired) {
+        // The entry is being removed, so wait for it to leave the hash table
+        continue;
       }
-      for (;;) {
-        final WeightedValue<V> oldWeightedValue = prior.get();
-        if (!oldWeightedValue.isAlive()) {
-          break;
-        }
 
-        if (prior.compareAndSet(oldWeightedValue, weightedValue)) {
-          final int weightedDifference = weight - oldWeightedValue.weight;
-          if (weightedDifference == 0) {
-            afterRead(prior);
-          } else {
-            afterWrite(new UpdateTask(prior, weightedDifference));
-          }
-          return oldWeightedValue.value;
+      if (onlyIfAbsent && recordsStats()) {
+        // Only a load is a lookup, which is a miss unless it was read
+        if (remapping.read == null) {
+          statsCounter.recordMisses(1);
+        } else {
+          statsCounter.recordHits(1);
         }
       }
+
+      if (remapping.added != null) {
+        afterWrite(remapping.added, ADD, remapping.weight);
+      } else if (remapping.removed != null) {
+        afterWrite(remapping.removed, REMOVE, 0);
+      } else if (remapping.updated != null) {
+        afterUpdate(remapping.updated, remapping.weightDifference);
+      } else if (remapping.read != null) {
+        return afterComputeRead(remapping.read, now);
+      }
+      return remapping.value;
     }
   }
 
-  @Override
-  public V remove(Object key) {
-    final Node<K, V> node = data.remove(key);
-    if (node == null) {
-      return null;
+  /**
+   * Performs the post-processing work required after a computation found the
+   * entry to be present and left it unchanged.
+   *
+   * @param node the entry that was read
+   * @param now the current time, in nanoseconds
+   * @return the entry's value
+   */
+  V afterComputeRead(Node<K, V> node, long now) {
+    if (recordsTime()) {
+      setAccessTime(node, now);
+      if (refreshesAfterWrite()) {
+        refreshIfNeeded(node, now);
+      }
     }
-
-    makeRetired(node);
-    afterWrite(new RemovalTask(node));
+    afterRead(node);
     return node.getValue();
   }
 
-  @Override
-  public boolean remove(Object key, Object value) {
-    final Node<K, V> node = data.get(key);
-    if ((node == null) || (value == null)) {
-      return false;
+  /**
+   * A function applied by the hash table, under its bin's lock, that computes
+   * the entry's new node. The outcome is captured so that the caller can
+   * record it with the page replacement policy after the lock is released.
+   */
+  final class Remapping implements BiFun<K, Node<K, V>, Node<K, V>> {
+    final BiFunction<? super K, ? super V, ? extends V> function;
+    final boolean onlyIfAbsent;
+    final boolean onlyIfPresent;
+    final long now;
+
+    Node<K, V> added;
+    Node<K, V> removed;
+    Node<K, V> updated;
+    Node<K, V> read;
+    int weight;
+    int weightDifference;
+    boolean retired;
+    V value;
+
+    Remapping(BiFunction<? super K, ? super V, ? extends V> function,
+        boolean onlyIfAbsent, boolean onlyIfPresent, long now) {
+      this.onlyIfPresent = onlyIfPresent;
+      this.onlyIfAbsent = onlyIfAbsent;
+      this.function = function;
+      this.now = now;
     }
 
-    WeightedValue<V> weightedValue = node.get();
-    for (;;) {
-      if (weightedValue.contains(value)) {
-        if (tryToRetire(node, weightedValue)) {
-          if (data.remove(key, node)) {
-            afterWrite(new RemovalTask(node));
-            return true;
-          }
-        } else {
-          weightedValue = node.get();
-          if (weightedValue.isAlive()) {
-            // retry as an intermediate update may have replaced the value with
-            // an equal instance that has a different reference identity
-            continue;
-          }
+    @Override
+    public Node<K, V> apply(K key, Node<K, V> prior) {
+      if (prior == null) {
+        if (onlyIfPresent) {
+          return null;
+        }
+        value = function.apply(key, null);
+        if (value == null) {
+          return null;
         }
+        weight = weigher.weightOf(key, value);
+        added = newNode(key, value, weight, now);
+        if (expiresVariably()) {
+          setWriteTime(added, Builder.UNSET_DURATION, true, now);
+        }
+        return added;
       }
-      return false;
-    }
-  }
-
-  @Override
-  public V replace(K key, V value) {
-    checkNotNull(key);
-    checkNotNull(value);
-
-    final int weight = weigher.weightOf(key, value);
-    final WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
 
-    final Node<K, V> node = data.get(key);
-    if (node == null) {
-      return null;
-    }
-    for (;;) {
-      final WeightedValue<V> oldWeightedValue = node.get();
-      if (!oldWeightedValue.isAlive()) {
-        return null;
-      }
-      if (node.compareAndSet(oldWeightedValue, weightedValue)) {
-        final int weightedDifference = weight - oldWeightedValue.weight;
-        if (weightedDifference == 0) {
-          afterRead(node);
-        } else {
-          afterWrite(new UpdateTask(node, weightedDifference));
+      synchronized (prior) {
+        if (!prior.isAlive()) {
+          retired = true;
+          return prior;
         }
-        return oldWeightedValue.value;
-      }
-    }
-  }
 
-  @Override
-  public boolean replace(K key, V oldValue, V newValue) {
-    checkNotNull(key);
-    checkNotNull(oldValue);
-    checkNotNull(newValue);
+        // An expired entry is computed as if it were absent
+        final boolean expired = hasExpired(prior, now);
+        final V oldValue = expired ? null : prior.value;
+        if (((oldValue != null) && onlyIfAbsent) || ((oldValue == null) && onlyIfPresent)) {
+          if (oldValue != null) {
+            read = prior;
+          }
+          value = oldValue;
+          return prior;
+        }
 
-    final int weight = weigher.weightOf(key, newValue);
-    final WeightedValue<V> newWeightedValue = new WeightedValue<V>(newValue, weight);
+        value = function.apply(key, oldValue);
+        if (value == null) {
+          if (expired) {
+            // The expired entry is left to be removed when the buffers drain
+            return prior;
+          }
+          prior.weight = -prior.weight;
+          removed = prior;
+          return null;
+        }
 
-    final Node<K, V> node = data.get(key);
-    if (node == null) {
-      return false;
-    }
-    for (;;) {
-      final WeightedValue<V> weightedValue = node.get();
-      if (!weightedValue.isAlive() || !weightedValue.contains(oldValue)) {
-        return false;
-      }
-      if (node.compareAndSet(weightedValue, newWeightedValue)) {
-        final int weightedDifference = weight - weightedValue.weight;
-        if (weightedDifference == 0) {
-          afterRead(node);
-        } else {
-          afterWrite(new UpdateTask(node, weightedDifference));
+        weight = weigher.weightOf(key, value);
+        weightDifference = weight - prior.weight;
+        prior.value = value;
+        prior.weight = weight;
+        if (recordsTime()) {
+          setWriteTime(prior, Builder.UNSET_DURATION, expired, now);
         }
-        return true;
+        updated = prior;
+        return prior;
       }
     }
   }
@@ -929,6 +2375,7 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   Set<K> orderedKeySet(boolean ascending, int limit) {
     checkArgument(limit >= 0);
     evictionLock.lock();
+    final long lockedAt = startLockTimer();
     try {
       drainBuffers();
 
@@ -936,18 +2383,29 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
           ? Math.min(limit, (int) weightedSize())
           : 16;
       final Set<K> keys = new LinkedHashSet<K>(initialCapacity);
-      final Iterator<Node<K, V>> iterator = ascending
-          ? evictionDeque.iterator()
-          : evictionDeque.descendingIterator();
+      final Iterator<? extends EvictionPolicy.Entry<K, V>> iterator = evictionOrder(ascending);
       while (iterator.hasNext() && (limit > keys.size())) {
-        keys.add(iterator.next().key);
+        keys.add(iterator.next().getKey());
       }
       return unmodifiableSet(keys);
     } finally {
-      evictionLock.unlock();
+      unlockEviction(lockedAt);
     }
   }
 
+  /**
+   * Returns an iterator over the entries in the order in which they are
+   * considered eligible for retention.
+   *
+   * @param ascending if the traversal is from the least-likely to be retained
+   *     to the most-likely
+   * @return an iterator over the entries in the page replacement policy
+   */
+  @GuardedBy("evictionLock")
+  Iterator<? extends EvictionPolicy.Entry<K, V>> evictionOrder(boolean ascending) {
+    return ascending ? policy.ascendingIterator() : policy.descendingIterator();
+  }
+
   @Override
   public Collection<V> values() {
     final Collection<V> vs = values;
@@ -1039,6 +2497,7 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   Map<K, V> orderedMap(boolean ascending, int limit) {
     checkArgument(limit >= 0);
     evictionLock.lock();
+    final long lockedAt = startLockTimer();
     try {
       drainBuffers();
 
@@ -1046,16 +2505,14 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
           ? Math.min(limit, (int) weightedSize())
           : 16;
       final Map<K, V> map = new LinkedHashMap<K, V>(initialCapacity);
-      final Iterator<Node<K, V>> iterator = ascending
-          ? evictionDeque.iterator()
-          : evictionDeque.descendingIterator();
+      final Iterator<? extends EvictionPolicy.Entry<K, V>> iterator = evictionOrder(ascending);
       while (iterator.hasNext() && (limit > map.size())) {
-        Node<K, V> node = iterator.next();
-        map.put(node.key, node.getValue());
+        EvictionPolicy.Entry<K, V> entry = iterator.next();
+        map.put(entry.getKey(), entry.getValue());
       }
       return unmodifiableMap(map);
     } finally {
-      evictionLock.unlock();
+      unlockEviction(lockedAt);
     }
   }
 
@@ -1092,19 +2549,58 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     abstract boolean shouldDrainBuffers(boolean delayable);
   }
 
-  /** A value, its weight, and the entry's status. */
-  @Immutable
-  static final class WeightedValue<V> {
-    final int weight;
-    final V value;
+  /** The regions of a segmented policy that an entry may reside in. */
+  enum Region {
 
-    WeightedValue(V value, int weight) {
-      this.weight = weight;
+    /** The admission window that all new entries are added to. */
+    WINDOW,
+
+    /** The main region's queue for entries that have not been reused. */
+    PROBATION,
+
+    /** The main region's queue for entries that have been reused. */
+    PROTECTED
+  }
+
+  /**
+   * A node contains the key, the value and its weight, and the linkage
+   * pointers on the page-replacement algorithm's data structures. The entry's
+   * status is encoded by the sign of its weight. The value and weight are read
+   * without locking, but are only written while synchronized on the node so
+   * that they change together and a transition can be made conditionally.
+   */
+  static final class Node<K, V> implements Linked<Node<K, V>>, EvictionPolicy.Entry<K, V> {
+    final K key;
+    @GuardedBy("this") // must write under the node's lock
+    volatile V value;
+    @GuardedBy("this") // must write under the node's lock
+    volatile int weight;
+    @GuardedBy("evictionLock")
+    Node<K, V> prev;
+    @GuardedBy("evictionLock")
+    Node<K, V> next;
+    @GuardedBy("evictionLock")
+    Region region;
+    @GuardedBy("evictionLock")
+    int policyWeight;
+    volatile boolean referenced;
+    final Timing<K, V> timing;
+
+    /**
+     * Creates a new, unlinked node with the timing data, or <tt>null</tt> if
+     * the map does not record the time that its entries were written and read.
+     */
+    Node(K key, V value, int weight, Timing<K, V> timing) {
+      this.key = key;
       this.value = value;
+      this.weight = weight;
+      this.timing = timing;
     }
 
+    /** If the value is the same instance as, or is equal to, the object. */
     boolean contains(Object o) {
-      return (o == value) || value.equals(o);
+      final V v = value;
+      return (o == v) || v.equals(o);
     }
 
     /**
@@ -1129,26 +2625,6 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     boolean isDead() {
       return weight == 0;
     }
-  }
-
-  /**
-   * A node contains the key, the weighted value, and the linkage pointers on
-   * the page-replacement algorithm's data structures.
-   */
-  @SuppressWarnings("serial")
-  static final class Node<K, V> extends AtomicReference<WeightedValue<V>>
-      implements Linked<Node<K, V>> {
-    final K key;
-    @GuardedBy("evictionLock")
-    Node<K, V> prev;
-    @GuardedBy("evictionLock")
-    Node<K, V> next;
-
-    /** Creates a new, unlinked node. */
-    Node(K key, WeightedValue<V> weightedValue) {
-      super(weightedValue);
-      this.key = key;
-    }
 
     @Override
     @GuardedBy("evictionLock")
@@ -1174,9 +2650,14 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
       this.next = next;
     }
 
-    /** Retrieves the value held by the current <tt>WeightedValue</tt>. */
-    V getValue() {
-      return get().value;
+    @Override
+    public K getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
     }
   }
 
@@ -1379,6 +2860,46 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     }
   }
 
+  /** An iterator that traverses a sequence of iterators in order. */
+  static final class ConcatenatedIterator<E> implements Iterator<E> {
+    final Iterator<Iterator<E>> iterators;
+    Iterator<E> current;
+
+    ConcatenatedIterator(Iterable<Iterator<E>> iterators) {
+      this.iterators = iterators.iterator();
+      this.current = emptyIterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (!iterators.hasNext()) {
+          return false;
+        }
+        current = iterators.next();
+      }
+      return true;
+    }
+
+    @Override
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> Iterator<E> emptyIterator() {
+      return (Iterator<E>) emptyList().iterator();
+    }
+  }
+
   /** A weigher that enforces that the weight falls within a valid range. */
   static final class BoundedEntryWeigher<K, V> implements EntryWeigher<K, V>, Serializable {
     static final long serialVersionUID = 1;
@@ -1411,6 +2932,95 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     @Override public Iterator<Object> iterator() { return emptyList().iterator(); }
   }
 
+  /**
+   * A stripe of the read buffer. A reader claims a slot in the ring by
+   * incrementing the write count and the drain replays the slots in order.
+   * The ring is a single array whose ends are padded with unused slots, rather
+   * than an array of padded references, so that a stripe is a few objects.
+   */
+  static final class ReadBuffer<E> {
+    final PaddedAtomicLong writeCount;
+    final PaddedAtomicLong drainAtWriteCount;
+    final AtomicReferenceArray<E> slots;
+    @GuardedBy("evictionLock")
+    long readCount;
+
+    ReadBuffer() {
+      writeCount = new PaddedAtomicLong();
+      drainAtWriteCount = new PaddedAtomicLong();
+      slots = new AtomicReferenceArray<E>(READ_BUFFER_SIZE + 2 * READ_BUFFER_PADDING);
+    }
+
+    /** Returns the index into the padded array of the slot for the count. */
+    static int indexOf(long count) {
+      return READ_BUFFER_PADDING + (int) (count & READ_BUFFER_INDEX_MASK);
+    }
+  }
+
+  /**
+   * The timestamps and linkage pointers of an entry that are only needed when
+   * the map expires or refreshes its entries, so that a node does not carry
+   * them otherwise. The write time is only written under the node's lock.
+   */
+  static final class Timing<K, V> {
+    volatile long accessTime;
+    volatile long writeTime;
+    volatile long variableTime;
+    @GuardedBy("evictionLock")
+    Node<K, V> accessPrev;
+    @GuardedBy("evictionLock")
+    Node<K, V> accessNext;
+    @GuardedBy("evictionLock")
+    Node<K, V> writePrev;
+    @GuardedBy("evictionLock")
+    Node<K, V> writeNext;
+    @GuardedBy("evictionLock")
+    Node<K, V> timerPrev;
+    @GuardedBy("evictionLock")
+    Node<K, V> timerNext;
+    volatile boolean refreshing;
+
+    /** Creates the timing data of an entry that was written at the given time. */
+    Timing(long now) {
+      this.accessTime = now;
+      this.writeTime = now;
+    }
+  }
+
+  /** A deque of the nodes ordered by when they were last accessed. */
+  static final class AccessOrderDeque<K, V> extends AbstractLinkedDeque<Node<K, V>> {
+    @Override Node<K, V> getPrevious(Node<K, V> node) { return node.timing.accessPrev; }
+    @Override void setPrevious(Node<K, V> node, Node<K, V> prev) { node.timing.accessPrev = prev; }
+    @Override Node<K, V> getNext(Node<K, V> node) { return node.timing.accessNext; }
+    @Override void setNext(Node<K, V> node, Node<K, V> next) { node.timing.accessNext = next; }
+  }
+
+  /** A deque of the nodes ordered by when they were last written. */
+  static final class WriteOrderDeque<K, V> extends AbstractLinkedDeque<Node<K, V>> {
+    @Override Node<K, V> getPrevious(Node<K, V> node) { return node.timing.writePrev; }
+    @Override void setPrevious(Node<K, V> node, Node<K, V> prev) { node.timing.writePrev = prev; }
+    @Override Node<K, V> getNext(Node<K, V> node) { return node.timing.writeNext; }
+    @Override void setNext(Node<K, V> node, Node<K, V> next) { node.timing.writeNext = next; }
+  }
+
+  /** A ticker that reads the system's high-resolution time source. */
+  enum SystemTicker implements Ticker {
+    INSTANCE;
+
+    @Override public long read() {
+      return System.nanoTime();
+    }
+  }
+
+  /** An executor that runs the task on the calling thread. */
+  enum DirectExecutor implements Executor {
+    INSTANCE;
+
+    @Override public void execute(Runnable task) {
+      task.run();
+    }
+  }
+
   /** A listener that ignores all notifications. */
   enum DiscardingListener implements EvictionListener<Object, Object> {
     INSTANCE;
@@ -1476,25 +3086,63 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   static final class SerializationProxy<K, V> implements Serializable {
     final EntryWeigher<? super K, ? super V> weigher;
     final EvictionListener<K, V> listener;
+    final BatchEvictionListener<K, V> batchListener;
+    final EvictionPolicy.Factory policyFactory;
+    final long expireAfterAccessNanos;
+    final long expireAfterWriteNanos;
+    final Expiry<K, V> expiry;
+    final long refreshAfterWriteNanos;
+    final Reloader<K, V> reloader;
+    final boolean recordStats;
     final int concurrencyLevel;
     final Map<K, V> data;
     final long capacity;
 
     SerializationProxy(ConcurrentLinkedHashMap<K, V> map) {
       concurrencyLevel = map.concurrencyLevel;
+      policyFactory = map.policyFactory;
+      expireAfterWriteNanos = map.expireAfterWriteNanos;
+      expireAfterAccessNanos = map.expireAfterAccessNanos;
+      expiry = map.expiry;
+      refreshAfterWriteNanos = map.refreshAfterWriteNanos;
+      reloader = map.reloader;
+      recordStats = map.recordsStats();
       data = new HashMap<K, V>(map);
       capacity = map.capacity.get();
+      batchListener = (map.batchNotifier == null) ? null : map.batchNotifier.listener;
       listener = map.listener;
       weigher = map.weigher;
     }
 
     Object readResolve() {
-      ConcurrentLinkedHashMap<K, V> map = new Builder<K, V>()
+      Builder<K, V> builder = new Builder<K, V>()
           .concurrencyLevel(concurrencyLevel)
           .maximumWeightedCapacity(capacity)
+          .policy(policyFactory)
           .listener(listener)
-          .weigher(weigher)
-          .build();
+          .weigher(weigher);
+      if (batchListener != null) {
+        builder.listener(batchListener, DirectExecutor.INSTANCE);
+      }
+      if (expireAfterWriteNanos >= 0) {
+        builder.expireAfterWrite(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+      }
+      if (expireAfterAccessNanos >= 0) {
+        builder.expireAfterAccess(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
+      }
+      if (expiry != null) {
+        builder.expiry(expiry);
+      }
+      if (refreshAfterWriteNanos >= 0) {
+        builder.refreshAfterWrite(refreshAfterWriteNanos, TimeUnit.NANOSECONDS);
+      }
+      if (reloader != null) {
+        builder.reloader(reloader, DirectExecutor.INSTANCE);
+      }
+      if (recordStats) {
+        builder.recordStats();
+      }
+      ConcurrentLinkedHashMap<K, V> map = builder.build();
       map.putAll(data);
       return map;
     }
@@ -1518,9 +3166,23 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
   public static final class Builder<K, V> {
     static final int DEFAULT_CONCURRENCY_LEVEL = 16;
     static final int DEFAULT_INITIAL_CAPACITY = 16;
+    static final long UNSET_DURATION = -1;
 
     EvictionListener<K, V> listener;
+    BatchEvictionListener<K, V> batchListener;
+    Executor notificationExecutor;
     EntryWeigher<? super K, ? super V> weigher;
+    EvictionPolicy.Factory policyFactory;
+    Executor executor;
+    Expiry<K, V> expiry;
+    Ticker ticker;
+    Reloader<K, V> reloader;
+    Executor refreshExecutor;
+
+    long expireAfterAccessNanos;
+    long expireAfterWriteNanos;
+    long refreshAfterWriteNanos;
+    boolean recordStats;
 
     int concurrencyLevel;
     int initialCapacity;
@@ -1532,6 +3194,12 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
       weigher = Weighers.entrySingleton();
       initialCapacity = DEFAULT_INITIAL_CAPACITY;
       concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+      policyFactory = EvictionPolicies.lru();
+      executor = DirectExecutor.INSTANCE;
+      ticker = SystemTicker.INSTANCE;
+      expireAfterWriteNanos = UNSET_DURATION;
+      expireAfterAccessNanos = UNSET_DURATION;
+      refreshAfterWriteNanos = UNSET_DURATION;
       listener = (EvictionListener<K, V>) DiscardingListener.INSTANCE;
     }
 
@@ -1590,6 +3258,32 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
     public Builder<K, V> listener(EvictionListener<K, V> listener) {
       checkNotNull(listener);
       this.listener = listener;
+      this.batchListener = null;
+      this.notificationExecutor = null;
+      return this;
+    }
+
+    /**
+     * Specifies an optional listener that is registered for notification when
+     * entries are evicted, which replaces any listener previously specified.
+     * The evicted entries are delivered in batches by the executor so that the
+     * listener does not run on a caller's thread, unless the executor rejects
+     * the delivery.
+     * <p>
+     * The executor is not serialized with the map, so a deserialized map
+     * delivers the notifications on the calling threads.
+     *
+     * @param listener the object to forward evicted entries to
+     * @param executor the executor that delivers the notifications
+     * @throws NullPointerException if the listener or executor is null
+     */
+    @SuppressWarnings("unchecked")
+    public Builder<K, V> listener(BatchEvictionListener<K, V> listener, Executor executor) {
+      checkNotNull(listener);
+      checkNotNull(executor);
+      this.listener = (EvictionListener<K, V>) DiscardingListener.INSTANCE;
+      this.notificationExecutor = executor;
+      this.batchListener = listener;
       return this;
     }
 
@@ -1623,15 +3317,195 @@ public final class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
       return this;
     }
 
+    /**
+     * Specifies the page replacement policy that determines which entry to
+     * evict when the map exceeds its capacity. The default policy evicts the
+     * least recently used entry.
+     *
+     * @param policyFactory the factory that creates the map's policy
+     * @throws NullPointerException if the policy factory is null
+     * @see EvictionPolicies
+     */
+    public Builder<K, V> policy(EvictionPolicy.Factory policyFactory) {
+      checkNotNull(policyFactory);
+      this.policyFactory = policyFactory;
+      return this;
+    }
+
+    /**
+     * Specifies the executor that applies the pending operations to the page
+     * replacement policy and evicts entries. By default this work is performed
+     * by the calling threads, which amortize it across their operations. If an
+     * executor is specified then the calling threads only schedule the work,
+     * and perform it themselves if the executor rejects the task. A writer
+     * that finds the write buffer full still helps to drain it, which throttles
+     * the writers if the executor falls behind.
+     * <p>
+     * The executor is not serialized with the map, so a deserialized map
+     * performs the work on the calling threads.
+     *
+     * @param executor the executor that maintains the page replacement policy
+     * @throws NullPointerException if the executor is null
+     */
+    public Builder<K, V> executor(Executor executor) {
+      checkNotNull(executor);
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Specifies that each entry should be automatically removed from the map
+     * once a fixed duration has elapsed after the entry's creation or the most
+     * recent replacement of its value. An expired entry is treated as absent
+     * by the retrieval operations and is removed, with the listener notified,
+     * when the map next drains its buffers. Until then it may still be counted
+     * by {@link ConcurrentLinkedHashMap#size()} and observed by the iterators.
+     *
+     * @param duration the length of time after an entry is written that it
+     *     should be automatically removed
+     * @param unit the unit that <tt>duration</tt> is expressed in
+     * @throws IllegalArgumentException if the duration is negative
+     * @throws NullPointerException if the unit is null
+     */
+    public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+      checkNotNull(unit);
+      checkArgument(duration >= 0);
+      this.expireAfterWriteNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * Specifies that each entry should be automatically removed from the map
+     * once a fixed duration has elapsed after the entry's creation, the most
+     * recent replacement of its value, or its last read. An expired entry is
+     * treated as absent by the retrieval operations and is removed, with the
+     * listener notified, when the map next drains its buffers. Until then it
+     * may still be counted by {@link ConcurrentLinkedHashMap#size()} and
+     * observed by the iterators.
+     *
+     * @param duration the length of time after an entry is last accessed that
+     *     it should be automatically removed
+     * @param unit the unit that <tt>duration</tt> is expressed in
+     * @throws IllegalArgumentException if the duration is negative
+     * @throws NullPointerException if the unit is null
+     */
+    public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+      checkNotNull(unit);
+      checkArgument(duration >= 0);
+      this.expireAfterAccessNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * Specifies that each entry should be automatically removed from the map
+     * once the duration that is determined by the expiry has elapsed. The
+     * expiry is asked for the entry's lifetime when it is created, when its
+     * value is replaced and when it is read, and the map's explicit
+     * {@link ConcurrentLinkedHashMap#put(Object, Object, long, TimeUnit)}
+     * may be used to specify the lifetime as it is written. An expired entry is
+     * treated as absent by the retrieval operations and is removed, with the
+     * listener notified, when the map next drains its buffers.
+     *
+     * @param expiry the expiry that determines the lifetime of each entry
+     * @throws NullPointerException if the expiry is null
+     */
+    public Builder<K, V> expiry(Expiry<K, V> expiry) {
+      checkNotNull(expiry);
+      this.expiry = expiry;
+      return this;
+    }
+
+    /**
+     * Specifies that each entry should be reloaded once a fixed duration has
+     * elapsed after the entry's creation or the most recent replacement of its
+     * value. The reload is triggered by the next retrieval of the entry, which
+     * returns the current value rather than waiting for the reloaded one, and
+     * is performed by the {@link #reloader(Reloader, Executor) reloader}.
+     *
+     * @param duration the length of time after an entry is written that it
+     *     should be reloaded
+     * @param unit the unit that <tt>duration</tt> is expressed in
+     * @throws IllegalArgumentException if the duration is not positive
+     * @throws NullPointerException if the unit is null
+     */
+    public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+      checkNotNull(unit);
+      checkArgument(duration > 0);
+      this.refreshAfterWriteNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * Specifies the reloader that computes a replacement value for an entry
+     * that is due to be refreshed, and the executor that it is run on. If the
+     * executor rejects the reload then it is run on the caller's thread. The
+     * reloader is serialized with the map, but is then run on the caller's
+     * thread.
+     *
+     * @param reloader the reloader that computes an entry's new value
+     * @param executor the executor that the reloads are performed on
+     * @throws NullPointerException if the reloader or executor is null
+     */
+    public Builder<K, V> reloader(Reloader<K, V> reloader, Executor executor) {
+      checkNotNull(reloader);
+      checkNotNull(executor);
+      this.refreshExecutor = executor;
+      this.reloader = reloader;
+      return this;
+    }
+
+    /**
+     * Specifies a nanosecond-precision time source for use in determining when
+     * entries should be expired. By default the system's time source is used.
+     * The ticker is not serialized with the map.
+     *
+     * @param ticker the time source that the map reads the current time from
+     * @throws NullPointerException if the ticker is null
+     */
+    public Builder<K, V> ticker(Ticker ticker) {
+      checkNotNull(ticker);
+      this.ticker = ticker;
+      return this;
+    }
+
+    /**
+     * Specifies that the hits, misses, writes, evictions and buffer drains are
+     * counted so that they may be inspected with
+     * {@link ConcurrentLinkedHashMap#stats()}. The statistics are not recorded
+     * by default, as counting adds a small overhead to every operation.
+     */
+    public Builder<K, V> recordStats() {
+      this.recordStats = true;
+      return this;
+    }
+
     /**
      * Creates a new {@link ConcurrentLinkedHashMap} instance.
      *
      * @throws IllegalStateException if the maximum weighted capacity was
-     *     not set
+     *     not set, or if a refresh duration was set without a reloader
      */
     public ConcurrentLinkedHashMap<K, V> build() {
       checkState(capacity >= 0);
+      checkState((refreshAfterWriteNanos < 0) || (reloader != null));
       return new ConcurrentLinkedHashMap<K, V>(this);
     }
+
+    /**
+     * Creates a new {@link AsyncLoadingMap} instance that loads its values on
+     * the executor. The entries are weighed once their values have loaded and
+     * the listener is notified only of the values that loaded successfully.
+     *
+     * @param executor the executor that the values are loaded on
+     * @throws IllegalStateException if the maximum weighted capacity was
+     *     not set, or if an expiry, refresh or batch listener was specified
+     * @throws NullPointerException if the executor is null
+     */
+    public AsyncLoadingMap<K, V> buildAsync(Executor executor) {
+      checkNotNull(executor);
+      checkState(capacity >= 0);
+      checkState((expiry == null) && (refreshAfterWriteNanos < 0) && (batchListener == null));
+      return new AsyncLoadingMap<K, V>(this, executor);
+    }
   }
 }
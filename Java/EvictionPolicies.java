@@ -0,0 +1,164 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.checkArgument;
+
+import java.io.Serializable;
+
+/**
+ * A common set of {@link EvictionPolicy} implementations.
+ */
+public final class EvictionPolicies {
+
+  private EvictionPolicies() {
+    throw new AssertionError();
+  }
+
+  /**
+   * A policy that evicts the least recently used entry. This is the default
+   * policy and is simple, fast, and effective for recency-skewed workloads.
+   *
+   * @return a factory for the Least Recently Used policy
+   */
+  public static EvictionPolicy.Factory lru() {
+    return BuiltInPolicy.LRU;
+  }
+
+  /**
+   * A policy that admits new entries into a small window and only retains
+   * them in the main region if they are estimated to be more popular than the
+   * entry that would otherwise be evicted. This improves the hit rate for
+   * skewed workloads and prevents scans from flushing the popular entries.
+   *
+   * @return a factory for the Window TinyLFU policy
+   */
+  public static EvictionPolicy.Factory windowTinyLfu() {
+    return BuiltInPolicy.WINDOW_TINY_LFU;
+  }
+
+  /**
+   * A Window TinyLFU policy that tunes the size of its window by sampling the
+   * hit rate over a period of ten operations per unit of capacity. The window
+   * grows when recency is more predictive of reuse and shrinks when frequency
+   * is. The current size of the window may be monitored using
+   * {@link ConcurrentLinkedHashMap#adaptationTarget()}.
+   *
+   * @return a factory for the adaptive Window TinyLFU policy
+   */
+  public static EvictionPolicy.Factory adaptiveWindowTinyLfu() {
+    return BuiltInPolicy.ADAPTIVE_WINDOW_TINY_LFU;
+  }
+
+  /**
+   * A Window TinyLFU policy that tunes the size of its window by sampling the
+   * hit rate over the specified number of operations.
+   *
+   * @param sampleSize the number of hits and misses per sample period
+   * @return a factory for the adaptive Window TinyLFU policy
+   * @throws IllegalArgumentException if the sample size is not positive
+   */
+  public static EvictionPolicy.Factory adaptiveWindowTinyLfu(int sampleSize) {
+    checkArgument(sampleSize > 0);
+    return new AdaptiveWindowTinyLfuFactory(sampleSize);
+  }
+
+  /**
+   * A policy that evicts based on the distance between the last two accesses
+   * to an entry. Most of the capacity holds the entries that are reused soon
+   * after being accessed, and recently evicted keys are remembered so that a
+   * reloaded entry can be promoted immediately. This improves the hit rate for
+   * workloads with scans and loops that are larger than the map.
+   *
+   * @return a factory for the Low Inter-reference Recency Set policy
+   */
+  public static EvictionPolicy.Factory lirs() {
+    return BuiltInPolicy.LIRS;
+  }
+
+  /**
+   * A policy that approximates LRU by giving an entry that was read since it
+   * was last considered a second chance. A read only sets a reference bit on
+   * the entry rather than being recorded for the policy, which minimizes the
+   * cost of a read when the map is read-mostly and accessed by many threads.
+   *
+   * @return a factory for the CLOCK policy
+   */
+  public static EvictionPolicy.Factory clock() {
+    return BuiltInPolicy.CLOCK;
+  }
+
+  /**
+   * A policy that balances between recency and frequency by remembering the
+   * keys of recently evicted entries and adapting the size of its recency
+   * biased region whenever one of those keys is reloaded. The current target
+   * may be monitored using {@link ConcurrentLinkedHashMap#adaptationTarget()}.
+   *
+   * @return a factory for the Adaptive Replacement Cache policy
+   */
+  public static EvictionPolicy.Factory arc() {
+    return BuiltInPolicy.ARC;
+  }
+
+  /** The policies provided by the library. */
+  enum BuiltInPolicy implements EvictionPolicy.Factory {
+    LRU {
+      @Override public <K, V> EvictionPolicy<K, V> create() {
+        return new LruPolicy<K, V>();
+      }
+    },
+    WINDOW_TINY_LFU {
+      @Override public <K, V> EvictionPolicy<K, V> create() {
+        return new WindowTinyLfuPolicy<K, V>(null);
+      }
+    },
+    ADAPTIVE_WINDOW_TINY_LFU {
+      @Override public <K, V> EvictionPolicy<K, V> create() {
+        return new WindowTinyLfuPolicy<K, V>(new HillClimber(0));
+      }
+    },
+    LIRS {
+      @Override public <K, V> EvictionPolicy<K, V> create() {
+        return new LirsPolicy<K, V>();
+      }
+    },
+    CLOCK {
+      @Override public <K, V> EvictionPolicy<K, V> create() {
+        return new ClockPolicy<K, V>();
+      }
+    },
+    ARC {
+      @Override public <K, V> EvictionPolicy<K, V> create() {
+        return new ArcPolicy<K, V>();
+      }
+    };
+  }
+
+  /** A factory for a Window TinyLFU policy with a configured sample size. */
+  static final class AdaptiveWindowTinyLfuFactory implements EvictionPolicy.Factory, Serializable {
+    static final long serialVersionUID = 1;
+    final int sampleSize;
+
+    AdaptiveWindowTinyLfuFactory(int sampleSize) {
+      this.sampleSize = sampleSize;
+    }
+
+    @Override
+    public <K, V> EvictionPolicy<K, V> create() {
+      return new WindowTinyLfuPolicy<K, V>(new HillClimber(sampleSize));
+    }
+  }
+}
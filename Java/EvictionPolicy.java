@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.Iterator;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A page replacement policy that determines which entry to evict when the map
+ * exceeds its capacity. An instance is created for each map and is only
+ * called while the map holds its eviction lock, so an implementation does not
+ * need to be thread-safe and should not perform blocking calls.
+ * <p>
+ * The map records reads and writes into buffers and replays them against the
+ * policy in batches, so the callbacks may arrive after the operation has
+ * completed and out-of-order. An implementation must tolerate an access or
+ * removal of an entry that it has not been notified was added, or that it has
+ * already chosen as a victim, by ignoring it.
+ *
+ * @see EvictionPolicies
+ */
+@NotThreadSafe
+public interface EvictionPolicy<K, V> {
+
+  /**
+   * Specifies the maximum weighted capacity of the map. This is called before
+   * the policy is first used and whenever the capacity is changed.
+   *
+   * @param capacity the maximum weighted capacity of the map
+   */
+  void setCapacity(long capacity);
+
+  /**
+   * A call-back notification that an entry was added to the map.
+   *
+   * @param entry the entry that was added
+   * @param weight the entry's weight
+   */
+  void onAdd(Entry<K, V> entry, int weight);
+
+  /**
+   * A call-back notification that an entry was read.
+   *
+   * @param entry the entry that was accessed
+   */
+  void onAccess(Entry<K, V> entry);
+
+  /**
+   * A call-back notification that an entry's value was replaced, which is
+   * also considered to be an access.
+   *
+   * @param entry the entry that was updated
+   * @param weightDifference the change in the entry's weight
+   */
+  void onUpdate(Entry<K, V> entry, int weightDifference);
+
+  /**
+   * A call-back notification that an entry was removed from the map explicitly.
+   *
+   * @param entry the entry that was removed
+   */
+  void onRemove(Entry<K, V> entry);
+
+  /**
+   * Selects the entry to evict and stops tracking it. The map will discard
+   * the victim and does not notify the policy of its removal.
+   *
+   * @return the entry to evict or <tt>null</tt> if no entries are tracked
+   */
+  Entry<K, V> selectVictim();
+
+  /**
+   * Returns an iterator over the tracked entries, from the least-likely to be
+   * retained to the most-likely.
+   *
+   * @return an ascending iterator over the entries
+   */
+  Iterator<? extends Entry<K, V>> ascendingIterator();
+
+  /**
+   * Returns an iterator over the tracked entries, from the most-likely to be
+   * retained to the least-likely.
+   *
+   * @return a descending iterator over the entries
+   */
+  Iterator<? extends Entry<K, V>> descendingIterator();
+
+  /** An entry in the map that is tracked by the policy. */
+  interface Entry<K, V> {
+
+    /** Returns the entry's key. */
+    K getKey();
+
+    /** Returns the entry's current value. */
+    V getValue();
+  }
+
+  /**
+   * A policy that adapts the balance between its recency and frequency biased
+   * regions to the workload. The target is published so that it may be read
+   * without holding the map's eviction lock.
+   */
+  interface Adaptive {
+
+    /**
+     * Returns the weighted size that the policy currently targets for its
+     * recency biased region.
+     *
+     * @return the current adaptation target
+     */
+    long adaptationTarget();
+  }
+
+  /**
+   * A policy that records a read directly on the entry, such as by setting a
+   * reference bit, rather than having the read buffered and replayed. The map
+   * calls {@link #recordRead} on the reading thread without holding its
+   * eviction lock, so the call must be thread-safe and inexpensive. The reads
+   * are still buffered if the map expires entries after access or by an
+   * {@link Expiry}, in which case the policy is notified by
+   * {@link EvictionPolicy#onAccess} instead.
+   */
+  interface UnbufferedReads {
+
+    /**
+     * Records that an entry was read.
+     *
+     * @param entry the entry that was accessed
+     */
+    void recordRead(Entry<?, ?> entry);
+  }
+
+  /**
+   * A factory that creates an instance of the policy for each map. If the map
+   * is serialized then the factory is serialized with it.
+   */
+  interface Factory {
+
+    /**
+     * Creates a new, empty policy instance.
+     *
+     * @return a policy for a single map
+     */
+    <K, V> EvictionPolicy<K, V> create();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Calculates when an entry should be automatically removed from the map, so
+ * that each entry may have its own lifetime. The durations are expressed in
+ * nanoseconds relative to the map's {@link Ticker} and an entry expires once
+ * its duration has elapsed. A duration that is longer than about one hundred
+ * years is treated as never expiring.
+ * <p>
+ * The methods are invoked while the entry is being written or read, so an
+ * implementation should be fast and must not block or access the map.
+ *
+ * @see ConcurrentLinkedHashMap.Builder#expiry(Expiry)
+ */
+@ThreadSafe
+public interface Expiry<K, V> {
+
+  /**
+   * Specifies that the entry should be automatically removed from the map once
+   * the duration has elapsed after the entry's creation.
+   *
+   * @param key the key of the entry that was created
+   * @param value the value of the entry that was created
+   * @param currentTime the current time, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterCreate(K key, V value, long currentTime);
+
+  /**
+   * Specifies that the entry should be automatically removed from the map once
+   * the duration has elapsed after the replacement of its value. To indicate
+   * no change, return the <tt>currentDuration</tt>.
+   *
+   * @param key the key of the entry that was updated
+   * @param value the new value of the entry
+   * @param currentTime the current time, in nanoseconds
+   * @param currentDuration the entry's remaining lifetime, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterUpdate(K key, V value, long currentTime, long currentDuration);
+
+  /**
+   * Specifies that the entry should be automatically removed from the map once
+   * the duration has elapsed after it was read. To indicate no change, return
+   * the <tt>currentDuration</tt>.
+   *
+   * @param key the key of the entry that was read
+   * @param value the value of the entry that was read
+   * @param currentTime the current time, in nanoseconds
+   * @param currentDuration the entry's remaining lifetime, in nanoseconds
+   * @return the length of time before the entry expires, in nanoseconds
+   */
+  long expireAfterRead(K key, V value, long currentTime, long currentDuration);
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A probabilistic multiset for estimating the popularity of an element within
+ * a time window. The maximum frequency of an element is limited to 15 (4-bits)
+ * and an aging process periodically halves the popularity of all elements.
+ * <p>
+ * The sketch is a count-min variant where each counter occupies 4 bits and
+ * sixteen counters are packed into a <tt>long</tt>. An element is hashed to a
+ * group of four counters within each of four table slots, and its frequency is
+ * the minimum of those counters. The table is sized lazily so that a map that
+ * never fills up does not pay for the sketch, and is grown without losing the
+ * counts that were already recorded.
+ * <p>
+ * The sketch is not thread-safe and is expected to be guarded by the map's
+ * eviction lock.
+ *
+ * @param <E> the type of elements being counted
+ * @see <a href="http://arxiv.org/pdf/1512.00727.pdf">TinyLFU</a>
+ */
+@NotThreadSafe
+final class FrequencySketch<E> {
+
+  /*
+   * The frequency of every element is recorded by a count-min sketch. The
+   * counters are 4-bits, so the maximum count is 15, which is sufficient to
+   * compare the relative popularity of two elements. When the number of
+   * increments reaches the sample size all of the counters are halved, which
+   * keeps the estimates fresh so that a formerly popular element ages out.
+   *
+   * Only the eviction candidate and victim are compared, so the estimates
+   * must be accurate relative to each other rather than in absolute terms.
+   */
+
+  /** The seeds, chosen from FarmHash / CityHash, for each of the hash functions. */
+  static final long[] SEED = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  /** A mask that clears the high bit of each counter when halving. */
+  static final long RESET_MASK = 0x7777777777777777L;
+
+  /** A mask that selects the low bit of each counter. */
+  static final long ONE_MASK = 0x1111111111111111L;
+
+  /** The smallest table that the sketch is allocated with. */
+  static final int MINIMUM_TABLE_SIZE = 8;
+
+  /** The largest table that the sketch may grow to. */
+  static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+  /** The number of increments per table slot before the counters are aged. */
+  static final int SAMPLE_MULTIPLIER = 10;
+
+  long[] table;
+  int tableMask;
+  int sampleSize;
+  int size;
+
+  /** Creates a sketch with the smallest table. */
+  FrequencySketch() {
+    table = new long[MINIMUM_TABLE_SIZE];
+    tableMask = MINIMUM_TABLE_SIZE - 1;
+    sampleSize = SAMPLE_MULTIPLIER * MINIMUM_TABLE_SIZE;
+  }
+
+  /**
+   * Increases the capacity of the sketch so that it can accurately estimate
+   * the popularity of elements given the maximum size of the map.
+   *
+   * @param maximumSize the maximum number of elements being tracked
+   */
+  void ensureCapacity(long maximumSize) {
+    final int maximum = (int) Math.min(maximumSize, MAXIMUM_TABLE_SIZE);
+    if (maximum <= table.length) {
+      return;
+    }
+
+    // A counter's index in the larger table is either its index in the smaller
+    // table or offset by a multiple of the smaller table's length, so tiling the
+    // old table across the new one preserves every estimate.
+    final int length = ConcurrentLinkedHashMap.ceilingNextPowerOfTwo(maximum);
+    final long[] resized = new long[length];
+    for (int i = 0; i < length; i += table.length) {
+      System.arraycopy(table, 0, resized, i, table.length);
+    }
+    table = resized;
+    tableMask = length - 1;
+    sampleSize = (int) Math.min((long) SAMPLE_MULTIPLIER * length, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the estimated number of occurrences of an element, up to the
+   * maximum (15).
+   *
+   * @param e the element to count occurrences of
+   * @return the estimated number of occurrences of the element
+   */
+  int frequency(E e) {
+    final int hash = spread(e.hashCode());
+    final int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      final int index = indexOf(hash, i);
+      final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the popularity of the element if it does not exceed the
+   * maximum (15). The popularity of all elements is periodically halved
+   * when the observed events exceed a threshold.
+   *
+   * @param e the element to add
+   */
+  void increment(E e) {
+    final int hash = spread(e.hashCode());
+    final int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && (++size == sampleSize)) {
+      reset();
+    }
+  }
+
+  /**
+   * Increments the specified counter by 1 if it is not already at the maximum
+   * value (15).
+   *
+   * @param i the table index (16 counters)
+   * @param j the counter to increment
+   * @return if incremented
+   */
+  boolean incrementAt(int i, int j) {
+    final int offset = j << 2;
+    final long mask = (0xfL << offset);
+    if ((table[i] & mask) != mask) {
+      table[i] += (1L << offset);
+      return true;
+    }
+    return false;
+  }
+
+  /** Reduces every counter by half of its original value. */
+  void reset() {
+    int count = 0;
+    for (int i = 0; i < table.length; i++) {
+      count += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (count >>> 2);
+  }
+
+  /**
+   * Returns the table index for the counter at the specified depth.
+   *
+   * @param item the element's hash
+   * @param i the counter depth
+   * @return the table index
+   */
+  int indexOf(int item, int i) {
+    long hash = (item + SEED[i]) * SEED[i];
+    hash += (hash >>> 32);
+    return ((int) hash) & tableMask;
+  }
+
+  /**
+   * Applies a supplemental hash function to a given hashCode, which defends
+   * against poor quality hash functions.
+   */
+  static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A hill climbing optimizer that tunes the size of a policy's region by
+ * sampling the hit rate. After each sample period the region is resized in
+ * the direction that last improved the hit rate, or in the opposite direction
+ * if the hit rate worsened. The step size decays so that the climber settles
+ * near the optimum, and is restarted when the hit rate changes sharply due to
+ * a shift in the workload.
+ * <p>
+ * The policy only observes the operations that the map replays to it, so the
+ * sampled hit rate is a proxy rather than the map's true hit rate. An added
+ * entry is counted as a miss and an access to a tracked entry as a hit, while
+ * a lookup of an absent key is not observed and a read that was dropped by a
+ * contended buffer is not counted. A replaced value whose weight did not
+ * change is recorded as a read by the map, so it is also counted as a hit.
+ */
+@NotThreadSafe
+final class HillClimber {
+
+  /** The change in the hit rate that causes the step size to be restarted. */
+  static final double RESTART_THRESHOLD = 0.05;
+
+  /** The percentage of the capacity that the climber initially steps by. */
+  static final double STEP_PERCENTAGE = 0.0625;
+
+  /** The rate at which the step size decays after each sample. */
+  static final double STEP_DECAY_RATE = 0.98;
+
+  /** The number of samples per unit of capacity when not configured. */
+  static final int SAMPLE_MULTIPLIER = 10;
+
+  final int sampleSize;
+
+  long hits;
+  long misses;
+  double stepSize;
+  double previousHitRate;
+
+  /**
+   * Creates a climber that samples the given number of operations.
+   *
+   * @param sampleSize the number of hits and misses per sample, or zero to
+   *     sample a multiple of the capacity
+   */
+  HillClimber(int sampleSize) {
+    this.sampleSize = sampleSize;
+  }
+
+  /** Records that an entry was found. */
+  void recordHit() {
+    hits++;
+  }
+
+  /** Records that an entry was not found. */
+  void recordMiss() {
+    misses++;
+  }
+
+  /**
+   * Returns the weighted amount that the region should be resized by if the
+   * sample period has ended, otherwise zero.
+   *
+   * @param capacity the maximum weighted capacity of the map
+   * @return the amount to grow the region by, or negative to shrink it
+   */
+  long adjustment(long capacity) {
+    final long sampleCount = hits + misses;
+    final long sampleTarget = (sampleSize > 0) ? sampleSize : (SAMPLE_MULTIPLIER * capacity);
+    if ((sampleCount == 0) || (sampleCount < sampleTarget)) {
+      return 0;
+    }
+
+    final double hitRate = (double) hits / sampleCount;
+    final double hitRateChange = hitRate - previousHitRate;
+    if (stepSize == 0) {
+      stepSize = STEP_PERCENTAGE * capacity;
+    }
+    final double amount = (hitRateChange >= 0) ? stepSize : -stepSize;
+    stepSize = (Math.abs(hitRateChange) >= RESTART_THRESHOLD)
+        ? STEP_PERCENTAGE * capacity * ((amount >= 0) ? 1 : -1)
+        : STEP_DECAY_RATE * amount;
+
+    previousHitRate = hitRate;
+    hits = 0;
+    misses = 0;
+
+    // The step is rounded to at least one unit so that a small capacity, or
+    // a decayed step size, still moves the region
+    final long step = Math.max(1L, Math.round(Math.abs(amount)));
+    return (amount >= 0) ? step : -step;
+  }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Node;
+
+/**
+ * The Low Inter-reference Recency Set policy, which evicts based on the
+ * distance between the last two accesses to an entry rather than only the
+ * time since the last access.
+ * <p>
+ * Entries with a short reuse distance are <tt>hot</tt> and occupy most of the
+ * capacity, while the remainder holds <tt>cold</tt> entries that are evicted
+ * first. The recency stack also retains a bounded number of non-resident
+ * entries whose keys were recently evicted, so that a key which is reloaded
+ * shortly after its eviction is promoted directly to the hot set. This makes
+ * the policy resistant to scans and loops that are larger than the map.
+ *
+ * @param <K> the type of keys maintained by the map
+ * @param <V> the type of mapped values
+ * @see <a href="http://portal.acm.org/citation.cfm?id=511340">
+ *      LIRS: An Efficient Low Inter-reference Recency Set Replacement</a>
+ */
+@NotThreadSafe
+final class LirsPolicy<K, V> implements EvictionPolicy<K, V> {
+
+  /*
+   * The policy is adapted from the LirsMap in the test suite, which follows
+   * the paper closely. Every entry is tracked by key in a hash table so that
+   * an entry can outlive its node as a non-resident entry. The node of a
+   * resident entry is compared by identity, as an operation on a node that
+   * was replaced or evicted may be replayed after the fact.
+   *
+   * The sizes are weighted, so promotion demotes as many hot entries as
+   * required to restore the hot set's bound rather than exactly one. The
+   * non-resident entries carry no weight, so their number is bounded by the
+   * number of resident entries rather than by the weighted capacity. They
+   * never reside in the queue, so those links are reused to order them for
+   * removal when there are too many.
+   */
+
+  /** The percentage of the capacity dedicated to hot entries. */
+  static final double HOT_PERCENTAGE = 0.99;
+
+  /** The status of an entry. */
+  enum Status {
+
+    /** A resident entry with a low inter-reference recency. */
+    HOT,
+
+    /** A resident entry with a high inter-reference recency. */
+    COLD,
+
+    /** An entry that was evicted but whose recency is still retained. */
+    NON_RESIDENT
+  }
+
+  final Map<K, LirsEntry> entries;
+  final LirsEntry header;
+  final LirsEntry nonResidents;
+
+  long maximumHotSize;
+  long hotSize;
+  long nonResidentSize;
+
+  LirsPolicy() {
+    entries = new HashMap<K, LirsEntry>();
+    header = new LirsEntry(null);
+    nonResidents = new LirsEntry(null);
+  }
+
+  @Override
+  public void setCapacity(long capacity) {
+    long hot = (long) (HOT_PERCENTAGE * capacity);
+
+    // When the hot set spans the entire capacity the policy reduces to LRU
+    maximumHotSize = ((hot == capacity) && (capacity > 1)) ? (capacity - 1) : hot;
+
+    demoteHotOverflow();
+    trimNonResidents();
+  }
+
+  @Override
+  public void onAdd(Entry<K, V> entry, int weight) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    LirsEntry e = entries.get(node.key);
+    if ((e != null) && (e.status != Status.NON_RESIDENT)) {
+      // The removal of the replaced node has not been replayed yet
+      e.discard();
+      e = null;
+    }
+    if (e == null) {
+      e = new LirsEntry(node.key);
+      entries.put(node.key, e);
+    } else {
+      e.removeFromQueue();
+      nonResidentSize--;
+    }
+    e.node = node;
+    e.weight = weight;
+    e.miss();
+  }
+
+  @Override
+  public void onAccess(Entry<K, V> entry) {
+    final LirsEntry e = residentEntryOf(entry);
+    if (e != null) {
+      e.hit();
+    }
+  }
+
+  @Override
+  public void onUpdate(Entry<K, V> entry, int weightDifference) {
+    final LirsEntry e = residentEntryOf(entry);
+    if (e != null) {
+      if (e.status == Status.HOT) {
+        hotSize += weightDifference;
+      }
+      e.weight += weightDifference;
+      e.hit();
+      demoteHotOverflow();
+    }
+  }
+
+  @Override
+  public void onRemove(Entry<K, V> entry) {
+    final LirsEntry e = residentEntryOf(entry);
+    if (e != null) {
+      e.discard();
+    }
+  }
+
+  /**
+   * Evicts the cold entry at the front of the queue, retaining its recency if
+   * it is still on the stack. If all of the resident entries are hot then the
+   * least recently used hot entry is evicted instead.
+   */
+  @Override
+  public Node<K, V> selectVictim() {
+    LirsEntry victim = queueFront();
+    if (victim == null) {
+      victim = stackBottom();
+      if (victim == null) {
+        return null;
+      }
+    }
+    final Node<K, V> node = victim.node;
+    victim.evict();
+    return node;
+  }
+
+  /** Returns the resident entry for the node, or null if not tracked. */
+  LirsEntry residentEntryOf(Entry<K, V> entry) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    final LirsEntry e = entries.get(node.key);
+    return ((e == null) || (e.node != node)) ? null : e;
+  }
+
+  /** Demotes the hot entries at the bottom of the stack while the hot set is too large. */
+  void demoteHotOverflow() {
+    LirsEntry bottom;
+    while ((hotSize > maximumHotSize) && ((bottom = stackBottom()) != null)) {
+      bottom.migrateToQueue();
+      pruneStack();
+    }
+  }
+
+  /**
+   * Discards the oldest non-resident entries while they outnumber the resident
+   * entries.
+   */
+  void trimNonResidents() {
+    while (nonResidentSize > (entries.size() - nonResidentSize)) {
+      final LirsEntry e = nonResidents.nextInQueue;
+      e.removeFromStack();
+      e.removeFromQueue();
+      entries.remove(e.key);
+      nonResidentSize--;
+    }
+  }
+
+  /**
+   * Prunes the cold and non-resident entries at the bottom of the stack until
+   * a hot entry sits at the bottom. A pruned cold entry remains in the queue,
+   * while a pruned non-resident entry is discarded.
+   */
+  void pruneStack() {
+    LirsEntry bottom = stackBottom();
+    while ((bottom != null) && (bottom.status != Status.HOT)) {
+      bottom.removeFromStack();
+      if (bottom.status == Status.NON_RESIDENT) {
+        bottom.removeFromQueue();
+        entries.remove(bottom.key);
+        nonResidentSize--;
+      }
+      bottom = stackBottom();
+    }
+  }
+
+  /** Returns the entry at the bottom of the stack. */
+  LirsEntry stackBottom() {
+    final LirsEntry bottom = header.previousInStack;
+    return (bottom == header) ? null : bottom;
+  }
+
+  /** Returns the entry at the front of the queue. */
+  LirsEntry queueFront() {
+    final LirsEntry front = header.nextInQueue;
+    return (front == header) ? null : front;
+  }
+
+  @Override
+  public Iterator<Node<K, V>> ascendingIterator() {
+    final List<Node<K, V>> nodes = new ArrayList<Node<K, V>>();
+    for (LirsEntry e = header.nextInQueue; e != header; e = e.nextInQueue) {
+      nodes.add(e.node);
+    }
+    for (LirsEntry e = header.previousInStack; e != header; e = e.previousInStack) {
+      if (e.status == Status.HOT) {
+        nodes.add(e.node);
+      }
+    }
+    return nodes.iterator();
+  }
+
+  @Override
+  public Iterator<Node<K, V>> descendingIterator() {
+    final List<Node<K, V>> nodes = new ArrayList<Node<K, V>>();
+    for (LirsEntry e = header.nextInStack; e != header; e = e.nextInStack) {
+      if (e.status == Status.HOT) {
+        nodes.add(e.node);
+      }
+    }
+    for (LirsEntry e = header.previousInQueue; e != header; e = e.previousInQueue) {
+      nodes.add(e.node);
+    }
+    return nodes.iterator();
+  }
+
+  /** Wraps a key with pointers into the LIRS stack and queue. */
+  final class LirsEntry {
+    final K key;
+    Node<K, V> node;
+    Status status;
+    int weight;
+
+    // The recency stack, S
+    LirsEntry previousInStack;
+    LirsEntry nextInStack;
+
+    // The resident cold queue, Q, or the non-resident queue
+    LirsEntry previousInQueue;
+    LirsEntry nextInQueue;
+
+    /** Creates an untracked entry, or a sentinel if the key is null. */
+    LirsEntry(K key) {
+      this.key = key;
+      this.status = Status.NON_RESIDENT;
+      if (key == null) {
+        previousInStack = nextInStack = this;
+        previousInQueue = nextInQueue = this;
+      }
+    }
+
+    /** Records an access to a resident entry. */
+    void hit() {
+      if (status == Status.HOT) {
+        // If the entry was at the bottom then the stack must be pruned
+        final boolean onBottom = (stackBottom() == this);
+        moveToStackTop();
+        if (onBottom) {
+          pruneStack();
+        }
+      } else if (inStack()) {
+        // A cold entry on the stack has a shorter reuse distance than the
+        // bottom hot entry, so the two swap their status
+        moveToStackTop();
+        removeFromQueue();
+        hot();
+        demoteHotOverflow();
+      } else {
+        moveToStackTop();
+        moveToQueueEnd();
+      }
+    }
+
+    /** Records a new or reloaded entry. */
+    void miss() {
+      if (hotSize < maximumHotSize) {
+        // While the hot set is not full all entries are given a hot status,
+        // though a weighted entry may still overflow it
+        moveToStackTop();
+        hot();
+        demoteHotOverflow();
+        return;
+      }
+
+      // A non-resident entry still on the stack was reused quickly enough
+      // that it is promoted directly to the hot set
+      final boolean inStack = inStack();
+      moveToStackTop();
+      if (inStack) {
+        hot();
+        demoteHotOverflow();
+      } else {
+        status = Status.COLD;
+        moveToQueueEnd();
+      }
+    }
+
+    /** Evicts the entry, retaining its recency if it is on the stack. */
+    void evict() {
+      if (status == Status.HOT) {
+        hotSize -= weight;
+      }
+      removeFromQueue();
+      node = null;
+      if ((status == Status.HOT) || !inStack()) {
+        removeFromStack();
+        entries.remove(key);
+        pruneStack();
+        return;
+      }
+
+      status = Status.NON_RESIDENT;
+      addToQueueBefore(nonResidents);
+      nonResidentSize++;
+      trimNonResidents();
+    }
+
+    /** Discards the entry and its recency due to an explicit removal. */
+    void discard() {
+      if (status == Status.HOT) {
+        hotSize -= weight;
+      }
+      removeFromStack();
+      removeFromQueue();
+      entries.remove(key);
+      pruneStack();
+      trimNonResidents();
+    }
+
+    /** Marks the entry as hot. */
+    void hot() {
+      if (status != Status.HOT) {
+        hotSize += weight;
+      }
+      status = Status.HOT;
+    }
+
+    /** Moves the entry from the stack to the end of the queue as cold. */
+    void migrateToQueue() {
+      hotSize -= weight;
+      status = Status.COLD;
+      removeFromStack();
+      moveToQueueEnd();
+    }
+
+    boolean inStack() {
+      return (nextInStack != null);
+    }
+
+    void moveToStackTop() {
+      removeFromStack();
+      previousInStack = header;
+      nextInStack = header.nextInStack;
+      previousInStack.nextInStack = this;
+      nextInStack.previousInStack = this;
+    }
+
+    void removeFromStack() {
+      if (inStack()) {
+        previousInStack.nextInStack = nextInStack;
+        nextInStack.previousInStack = previousInStack;
+        previousInStack = null;
+        nextInStack = null;
+      }
+    }
+
+    void moveToQueueEnd() {
+      removeFromQueue();
+      addToQueueBefore(header);
+    }
+
+    void addToQueueBefore(LirsEntry existing) {
+      previousInQueue = existing.previousInQueue;
+      nextInQueue = existing;
+      previousInQueue.nextInQueue = this;
+      nextInQueue.previousInQueue = this;
+    }
+
+    void removeFromQueue() {
+      if (nextInQueue != null) {
+        previousInQueue.nextInQueue = nextInQueue;
+        nextInQueue.previousInQueue = previousInQueue;
+        previousInQueue = null;
+        nextInQueue = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.Iterator;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Node;
+
+/**
+ * The Least Recently Used policy, which evicts the entry that has gone the
+ * longest without being accessed. The entries are kept in access order by a
+ * {@link LinkedDeque}, so every operation runs in constant time.
+ *
+ * @param <K> the type of keys maintained by the map
+ * @param <V> the type of mapped values
+ */
+@NotThreadSafe
+final class LruPolicy<K, V> implements EvictionPolicy<K, V> {
+  final LinkedDeque<Node<K, V>> deque = new LinkedDeque<Node<K, V>>();
+
+  @Override
+  public void setCapacity(long capacity) {}
+
+  @Override
+  public void onAdd(Entry<K, V> entry, int weight) {
+    deque.add((Node<K, V>) entry);
+  }
+
+  @Override
+  public void onAccess(Entry<K, V> entry) {
+    // An entry may be scheduled for reordering despite having been removed.
+    // This can occur when the entry was concurrently read while a writer was
+    // removing it. If the entry is no longer linked then it does not need to
+    // be processed.
+    final Node<K, V> node = (Node<K, V>) entry;
+    if (deque.contains(node)) {
+      deque.moveToBack(node);
+    }
+  }
+
+  @Override
+  public void onUpdate(Entry<K, V> entry, int weightDifference) {
+    onAccess(entry);
+  }
+
+  @Override
+  public void onRemove(Entry<K, V> entry) {
+    deque.remove(entry);
+  }
+
+  @Override
+  public Node<K, V> selectVictim() {
+    return deque.poll();
+  }
+
+  @Override
+  public Iterator<Node<K, V>> ascendingIterator() {
+    return deque.iterator();
+  }
+
+  @Override
+  public Iterator<Node<K, V>> descendingIterator() {
+    return deque.descendingIterator();
+  }
+}
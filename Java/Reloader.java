@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Computes a replacement value for an entry that is due to be refreshed. The
+ * reload is performed on an executor while the map continues to return the
+ * current value, so that a popular entry is never absent while its value is
+ * being recomputed.
+ * <p>
+ * At most one reload is in progress for an entry at a time. If the entry is
+ * written or removed while it is being reloaded then the reloaded value is
+ * discarded. If the reload fails or returns <tt>null</tt> then the current
+ * value is retained and the next read of the entry will try again.
+ *
+ * @see ConcurrentLinkedHashMap.Builder#refreshAfterWrite(long,
+ *      java.util.concurrent.TimeUnit)
+ * @see ConcurrentLinkedHashMap.Builder#reloader(Reloader,
+ *      java.util.concurrent.Executor)
+ */
+@ThreadSafe
+public interface Reloader<K, V> {
+
+  /**
+   * Computes a replacement value for the entry.
+   *
+   * @param key the key of the entry being refreshed
+   * @param oldValue the entry's current value
+   * @return the new value, or <tt>null</tt> to retain the current value
+   * @throws Exception if the value could not be computed
+   */
+  V reload(K key, V oldValue) throws Exception;
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records the statistics of a map. The counters are striped so that the
+ * threads recording a hit or miss on every read do not contend on a single
+ * memory location. A thread uses the stripe chosen by the same probe that
+ * selects its read buffer, so the threads that are spread across the read
+ * buffers are spread across the counters too. The stripes are summed when a
+ * snapshot is taken.
+ */
+@ThreadSafe
+final class StatsCounter {
+
+  /*
+   * The counters of a stripe are laid out contiguously in a single array and
+   * each stripe is padded to occupy 128 bytes, so that the stripes do not
+   * share a cache line. The first block is left empty to isolate the array's
+   * header from the first stripe.
+   */
+
+  /** The number of longs occupied by a stripe, including padding. */
+  static final int STRIPE_LENGTH = 16;
+
+  static final int HITS = 0;
+  static final int MISSES = 1;
+  static final int PUTS = 2;
+  static final int EVICTIONS = 3;
+  static final int EVICTION_WEIGHT = 4;
+  static final int DRAINS = 5;
+  static final int DRAIN_TIME = 6;
+  static final int DROPPED_READS = 7;
+
+  final AtomicLongArray counters;
+  final int stripeMask;
+
+  /**
+   * Creates a counter with the specified number of stripes.
+   *
+   * @param stripes the number of stripes, which must be a power of two
+   */
+  StatsCounter(int stripes) {
+    stripeMask = stripes - 1;
+    counters = new AtomicLongArray((stripes + 1) * STRIPE_LENGTH);
+  }
+
+  /** Records the lookups that found a present entry. */
+  void recordHits(int count) {
+    add(HITS, count);
+  }
+
+  /** Records the lookups that found the entry absent or expired. */
+  void recordMisses(int count) {
+    add(MISSES, count);
+  }
+
+  /** Records a write that added or replaced an entry. */
+  void recordPut() {
+    add(PUTS, 1);
+  }
+
+  /** Records the eviction of an entry with the given weight. */
+  void recordEviction(int weight) {
+    final int offset = offset();
+    counters.getAndIncrement(offset + EVICTIONS);
+    counters.getAndAdd(offset + EVICTION_WEIGHT, weight);
+  }
+
+  /** Records that the buffers were drained, taking the given nanoseconds. */
+  void recordDrain(long duration) {
+    final int offset = offset();
+    counters.getAndIncrement(offset + DRAINS);
+    counters.getAndAdd(offset + DRAIN_TIME, Math.max(0L, duration));
+  }
+
+  /** Records a read that was discarded because its buffer was contended. */
+  void recordDroppedRead() {
+    add(DROPPED_READS, 1);
+  }
+
+  /** Returns the number of reads that were discarded due to contention. */
+  long droppedReads() {
+    return sum(DROPPED_READS);
+  }
+
+  /** Adds the amount to the counter on the current thread's stripe. */
+  void add(int counter, long amount) {
+    if (amount != 0) {
+      counters.getAndAdd(offset() + counter, amount);
+    }
+  }
+
+  /** Returns the index of the first counter of the current thread's stripe. */
+  int offset() {
+    final int[] probe = ConcurrentLinkedHashMap.PROBE.get();
+    return ((probe[0] & stripeMask) + 1) * STRIPE_LENGTH;
+  }
+
+  /** Returns the sum of the counter across all of the stripes. */
+  long sum(int counter) {
+    long sum = 0L;
+    for (int i = STRIPE_LENGTH; i < counters.length(); i += STRIPE_LENGTH) {
+      sum += counters.get(i + counter);
+    }
+    return sum;
+  }
+
+  /** Returns a snapshot of the summed counters. */
+  CacheStats snapshot() {
+    return new CacheStats(sum(HITS), sum(MISSES), sum(PUTS), sum(EVICTIONS),
+        sum(EVICTION_WEIGHT), sum(DRAINS), sum(DRAIN_TIME));
+  }
+}
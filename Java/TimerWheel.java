@@ -0,0 +1,258 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Node;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Timing;
+
+/**
+ * A hierarchical timer wheel that schedules the entries by the time at which
+ * they expire, so that adding, rescheduling and removing an entry are O(1)
+ * operations and advancing the wheel visits only the entries whose bucket
+ * has elapsed.
+ * <p>
+ * Each level of the hierarchy is an array of buckets, where each bucket spans
+ * a power-of-two number of nanoseconds and the levels span about a second, a
+ * minute, an hour, a day and a week. An entry is placed in the level whose
+ * span is the smallest that can hold its remaining duration, and in the bucket
+ * of that level that its expiration time hashes to. When the wheel is advanced
+ * the buckets that the time has passed over are emptied, and an entry that
+ * has not yet expired is placed into a lower level as it is rescheduled. The
+ * entry is linked into its bucket through the node's timer pointers, where the
+ * bucket is a circular list headed by a sentinel, so that the entry can be
+ * unlinked without knowing which bucket holds it.
+ * <p>
+ * The wheel is not thread-safe and is expected to be guarded by the map's
+ * eviction lock.
+ *
+ * @param <K> the type of keys maintained by the map
+ * @param <V> the type of mapped values
+ * @see <a href="http://www.cs.columbia.edu/~nahum/w6998/papers/ton97-timing-wheels.pdf">
+ *     Hashed and Hierarchical Timing Wheels</a>
+ */
+@NotThreadSafe
+final class TimerWheel<K, V> {
+
+  /** The number of buckets in each level of the hierarchy. */
+  static final int[] BUCKETS = {64, 64, 32, 4, 1};
+
+  /** The duration, in nanoseconds, of a bucket in each level of the hierarchy. */
+  static final long[] SPANS = {
+      ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+      ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+      ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)),   // 1.22h
+      ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),    // 1.63d
+      BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+  };
+
+  /** The number of bits to shift a time by to obtain its bucket's tick. */
+  static final long[] SHIFT = {
+      Long.numberOfTrailingZeros(SPANS[0]),
+      Long.numberOfTrailingZeros(SPANS[1]),
+      Long.numberOfTrailingZeros(SPANS[2]),
+      Long.numberOfTrailingZeros(SPANS[3]),
+      Long.numberOfTrailingZeros(SPANS[4]),
+  };
+
+  final Node<K, V>[][] wheel;
+
+  /** The time, in nanoseconds, that the wheel was last advanced to. */
+  long nanos;
+
+  /**
+   * Creates an empty wheel whose buckets are each headed by a sentinel.
+   *
+   * @param now the current time, in nanoseconds
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  TimerWheel(long now) {
+    nanos = now;
+    wheel = new Node[BUCKETS.length][];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new Node[BUCKETS[i]];
+      for (int j = 0; j < wheel[i].length; j++) {
+        final Node<K, V> sentinel = new Node<K, V>(null, null, 0, new Timing<K, V>(0L));
+        sentinel.timing.timerPrev = sentinel;
+        sentinel.timing.timerNext = sentinel;
+        wheel[i][j] = sentinel;
+      }
+    }
+  }
+
+  /**
+   * Advances the wheel to the current time and expires the entries in the
+   * buckets that elapsed. An entry that has not expired, such as one that was
+   * written since it was scheduled, is placed into the bucket for its time.
+   *
+   * @param map the map that the entries are removed from
+   * @param currentTimeNanos the current time, in nanoseconds
+   */
+  void advance(ConcurrentLinkedHashMap<K, V> map, long currentTimeNanos) {
+    long previousTimeNanos = nanos;
+    nanos = currentTimeNanos;
+
+    // If the time source wrapped around then shift both times so that the
+    // ticks compare as positive values
+    if ((previousTimeNanos < 0) && (currentTimeNanos > 0)) {
+      previousTimeNanos += Long.MAX_VALUE;
+      currentTimeNanos += Long.MAX_VALUE;
+    }
+
+    for (int i = 0; i < SHIFT.length; i++) {
+      final long previousTicks = (previousTimeNanos >>> SHIFT[i]);
+      final long currentTicks = (currentTimeNanos >>> SHIFT[i]);
+      if ((currentTicks - previousTicks) <= 0L) {
+        break;
+      }
+      expire(map, i, previousTicks, currentTicks - previousTicks);
+    }
+  }
+
+  /**
+   * Expires the entries, or reschedules them into a lower level, in the
+   * buckets of the level that the time has passed over.
+   *
+   * @param map the map that the entries are removed from
+   * @param index the level of the hierarchy
+   * @param previousTicks the tick that the level was last advanced to
+   * @param delta the number of ticks that elapsed
+   */
+  void expire(ConcurrentLinkedHashMap<K, V> map, int index, long previousTicks, long delta) {
+    final Node<K, V>[] timerWheel = wheel[index];
+    final int mask = timerWheel.length - 1;
+
+    // The bucket at the previous tick may hold entries that expire later
+    // within its span, so it is revisited along with the elapsed buckets
+    final int steps = (int) Math.min(1 + delta, timerWheel.length);
+    final int start = (int) (previousTicks & mask);
+    final int end = start + steps;
+
+    for (int i = start; i < end; i++) {
+      final Node<K, V> sentinel = timerWheel[i & mask];
+      Node<K, V> node = sentinel.timing.timerNext;
+      sentinel.timing.timerPrev = sentinel;
+      sentinel.timing.timerNext = sentinel;
+
+      while (node != sentinel) {
+        final Node<K, V> next = node.timing.timerNext;
+        node.timing.timerPrev = null;
+        node.timing.timerNext = null;
+        if (((node.timing.variableTime - nanos) > 0) || map.expire(node, nanos)) {
+          schedule(node);
+        }
+        node = next;
+      }
+    }
+  }
+
+  /**
+   * Schedules the entry into the bucket for its expiration time.
+   *
+   * @param node the entry in the map, which is not in the wheel
+   */
+  void schedule(Node<K, V> node) {
+    link(findBucket(node.timing.variableTime), node);
+  }
+
+  /**
+   * Moves the entry to the bucket for its expiration time, if it is in the
+   * wheel.
+   *
+   * @param node the entry in the map
+   */
+  void reschedule(Node<K, V> node) {
+    if (node.timing.timerNext != null) {
+      unlink(node);
+      schedule(node);
+    }
+  }
+
+  /**
+   * Removes the entry from the wheel, if present.
+   *
+   * @param node the entry in the map
+   */
+  void deschedule(Node<K, V> node) {
+    if (node.timing.timerNext != null) {
+      unlink(node);
+      node.timing.timerPrev = null;
+      node.timing.timerNext = null;
+    }
+  }
+
+  /** Removes all of the entries from the wheel. */
+  void clear() {
+    for (Node<K, V>[] timerWheel : wheel) {
+      for (Node<K, V> sentinel : timerWheel) {
+        Node<K, V> node = sentinel.timing.timerNext;
+        while (node != sentinel) {
+          final Node<K, V> next = node.timing.timerNext;
+          node.timing.timerPrev = null;
+          node.timing.timerNext = null;
+          node = next;
+        }
+        sentinel.timing.timerPrev = sentinel;
+        sentinel.timing.timerNext = sentinel;
+      }
+    }
+  }
+
+  /**
+   * Returns the sentinel of the bucket that the time is scheduled in.
+   *
+   * @param time the time at which the entry expires, in nanoseconds
+   * @return the sentinel at the head of the bucket
+   */
+  Node<K, V> findBucket(long time) {
+    final long duration = time - nanos;
+    final int length = wheel.length - 1;
+    for (int i = 0; i < length; i++) {
+      if (duration < SPANS[i + 1]) {
+        final long ticks = (time >>> SHIFT[i]);
+        final int index = (int) (ticks & (wheel[i].length - 1));
+        return wheel[i][index];
+      }
+    }
+    return wheel[length][0];
+  }
+
+  /** Adds the entry at the tail of the bucket's list. */
+  static <K, V> void link(Node<K, V> sentinel, Node<K, V> node) {
+    final Node<K, V> last = sentinel.timing.timerPrev;
+    node.timing.timerPrev = last;
+    node.timing.timerNext = sentinel;
+
+    last.timing.timerNext = node;
+    sentinel.timing.timerPrev = node;
+  }
+
+  /** Removes the entry from the list of the bucket that holds it. */
+  static <K, V> void unlink(Node<K, V> node) {
+    final Node<K, V> prev = node.timing.timerPrev;
+    final Node<K, V> next = node.timing.timerNext;
+    prev.timing.timerNext = next;
+    next.timing.timerPrev = prev;
+  }
+
+  /** Returns the smallest power of two greater than or equal to the value. */
+  static long ceilingPowerOfTwo(long x) {
+    return 1L << -Long.numberOfLeadingZeros(x - 1);
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.ConcatenatedIterator;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Node;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Region;
+
+/**
+ * The Window TinyLFU policy, which uses a frequency sketch to decide whether
+ * a new entry is worth retaining.
+ * <p>
+ * New entries are admitted into a small LRU window, which captures bursts of
+ * recency. When the window overflows its least recently used entry becomes a
+ * candidate for the main region, which is a segmented LRU of a probation and a
+ * protected queue. The candidate is only admitted if its estimated frequency
+ * is greater than the main region's victim, which prevents scans and one-hit
+ * wonders from flushing the popular entries.
+ * <p>
+ * The split between the window and the main region may optionally be tuned
+ * by a {@link HillClimber} that samples the hit rate, as a larger window
+ * favors recency-skewed workloads and a smaller one favors frequency-skewed
+ * workloads. The regions are resized incrementally, as the entries are moved
+ * between them a bounded amount at a time while adding and accessing entries.
+ *
+ * @param <K> the type of keys maintained by the map
+ * @param <V> the type of mapped values
+ * @see <a href="http://arxiv.org/pdf/1512.00727.pdf">TinyLFU</a>
+ */
+@NotThreadSafe
+final class WindowTinyLfuPolicy<K, V> implements EvictionPolicy<K, V>, EvictionPolicy.Adaptive {
+
+  /** The percentage of the capacity dedicated to the admission window. */
+  static final double WINDOW_PERCENTAGE = 0.01;
+
+  /** The percentage of the main region dedicated to the protected queue. */
+  static final double PROTECTED_PERCENTAGE = 0.80;
+
+  /** The maximum number of entries to move between the regions at a time. */
+  static final int QUEUE_TRANSFER_THRESHOLD = 1000;
+
+  final HillClimber climber;
+  final FrequencySketch<K> sketch;
+  final LinkedDeque<Node<K, V>> windowDeque;
+  final LinkedDeque<Node<K, V>> probationDeque;
+  final LinkedDeque<Node<K, V>> protectedDeque;
+
+  long capacity;
+  long weightedSize;
+  long windowWeightedSize;
+  long protectedWeightedSize;
+  double windowPercentage;
+
+  // Written under the eviction lock and read without it
+  volatile long windowMaximum;
+
+  /**
+   * Creates the policy with an optional hill climber.
+   *
+   * @param climber the optimizer of the window's size, or <tt>null</tt> if
+   *     the window is a fixed percentage of the capacity
+   */
+  WindowTinyLfuPolicy(HillClimber climber) {
+    this.climber = climber;
+    windowPercentage = WINDOW_PERCENTAGE;
+    sketch = new FrequencySketch<K>();
+    windowDeque = new LinkedDeque<Node<K, V>>();
+    probationDeque = new LinkedDeque<Node<K, V>>();
+    protectedDeque = new LinkedDeque<Node<K, V>>();
+  }
+
+  @Override
+  public void setCapacity(long capacity) {
+    this.capacity = capacity;
+    windowMaximum = (long) (windowPercentage * capacity);
+  }
+
+  @Override
+  public long adaptationTarget() {
+    return windowMaximum;
+  }
+
+  /** Retrieves the maximum weighted size of the protected queue. */
+  long protectedMaximum() {
+    return (long) (PROTECTED_PERCENTAGE * (capacity - windowMaximum));
+  }
+
+  /**
+   * Resizes the window if the climber determines that the sample period has
+   * ended. The entries are not moved eagerly, as the window's overflow is
+   * moved into the main region on subsequent additions and evictions.
+   */
+  void climb() {
+    final long amount = climber.adjustment(capacity);
+    if ((amount == 0) || (capacity == 0)) {
+      return;
+    }
+    final long maximum = Math.max(0, Math.min(capacity, windowMaximum + amount));
+    windowPercentage = (double) maximum / capacity;
+    windowMaximum = maximum;
+  }
+
+  /**
+   * Adds a new entry to the admission window and, while the policy has not
+   * exceeded its capacity, moves the window's overflow into the main region.
+   */
+  @Override
+  public void onAdd(Entry<K, V> entry, int weight) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    if (weightedSize >= (capacity >>> 1)) {
+      sketch.ensureCapacity(capacity);
+    }
+    sketch.increment(node.key);
+
+    node.policyWeight = weight;
+    link(node, Region.WINDOW);
+    if (climber != null) {
+      climber.recordMiss();
+      climb();
+    }
+
+    // While the map is full the eviction determines whether the new entry's
+    // displaced candidate is admitted. Any older overflow, such as after the
+    // window was shrunk, is moved into the main region incrementally.
+    final long windowLimit = (weightedSize > capacity) ? (windowMaximum + weight) : windowMaximum;
+    for (int i = 0; (i < QUEUE_TRANSFER_THRESHOLD) && (windowWeightedSize > windowLimit); i++) {
+      final Node<K, V> candidate = windowDeque.peekFirst();
+      unlink(candidate);
+      link(candidate, Region.PROBATION);
+    }
+  }
+
+  @Override
+  public void onAccess(Entry<K, V> entry) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    if ((climber != null) && (node.region != null)) {
+      climber.recordHit();
+      climb();
+    }
+    access(node);
+  }
+
+  /**
+   * Records an access to the entry. An entry in the probation queue is
+   * promoted to the protected queue, which may demote the protected queue's
+   * least recently used entries back into probation.
+   */
+  void access(Node<K, V> node) {
+    sketch.increment(node.key);
+
+    final Region region = node.region;
+    if (region == Region.WINDOW) {
+      windowDeque.moveToBack(node);
+    } else if (region == Region.PROTECTED) {
+      protectedDeque.moveToBack(node);
+    } else if (region == Region.PROBATION) {
+      unlink(node);
+      link(node, Region.PROTECTED);
+
+      final long maximum = protectedMaximum();
+      for (int i = 0; (i < QUEUE_TRANSFER_THRESHOLD) && (protectedWeightedSize > maximum); i++) {
+        final Node<K, V> demoted = protectedDeque.peekFirst();
+        unlink(demoted);
+        link(demoted, Region.PROBATION);
+      }
+    }
+  }
+
+  @Override
+  public void onUpdate(Entry<K, V> entry, int weightDifference) {
+    final Node<K, V> node = (Node<K, V>) entry;
+    final Region region = node.region;
+    if (region != null) {
+      unlink(node);
+      node.policyWeight += weightDifference;
+      link(node, region);
+    }
+    access(node);
+  }
+
+  @Override
+  public void onRemove(Entry<K, V> entry) {
+    unlink((Node<K, V>) entry);
+  }
+
+  /**
+   * Selects and unlinks the entry to evict. If the window has exceeded its
+   * maximum then its least recently used entry is a candidate for admission
+   * into the main region, and either it or the main region's victim is
+   * evicted depending on their estimated frequencies.
+   */
+  @Override
+  public Node<K, V> selectVictim() {
+    Node<K, V> victim = probationDeque.peekFirst();
+    if (victim == null) {
+      victim = protectedDeque.peekFirst();
+    }
+    final Node<K, V> candidate = (windowWeightedSize > windowMaximum)
+        ? windowDeque.peekFirst()
+        : null;
+
+    if (candidate == null) {
+      if (victim == null) {
+        victim = windowDeque.peekFirst();
+      }
+    } else if ((victim == null) || !admit(candidate.key, victim.key)) {
+      victim = candidate;
+    } else {
+      unlink(candidate);
+      link(candidate, Region.PROBATION);
+    }
+
+    if (victim != null) {
+      unlink(victim);
+    }
+    return victim;
+  }
+
+  /**
+   * Determines if the candidate should be accepted into the main region, as
+   * determined by whether it is more popular than the victim.
+   *
+   * @param candidateKey the key of the entry being proposed for retention
+   * @param victimKey the key of the entry chosen to be evicted
+   * @return if the candidate should be admitted and the victim evicted
+   */
+  boolean admit(K candidateKey, K victimKey) {
+    return sketch.frequency(candidateKey) > sketch.frequency(victimKey);
+  }
+
+  /**
+   * Links the node to the tail of the region's queue and adjusts the weighted
+   * sizes.
+   *
+   * @param node the entry in the page replacement policy
+   * @param region the region to add to
+   */
+  void link(Node<K, V> node, Region region) {
+    node.region = region;
+    weightedSize += node.policyWeight;
+    switch (region) {
+      case WINDOW:
+        windowDeque.add(node);
+        windowWeightedSize += node.policyWeight;
+        break;
+      case PROBATION:
+        probationDeque.add(node);
+        break;
+      case PROTECTED:
+        protectedDeque.add(node);
+        protectedWeightedSize += node.policyWeight;
+        break;
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  /**
+   * Unlinks the node from its region's queue, if linked, and adjusts the
+   * weighted sizes.
+   *
+   * @param node the entry in the page replacement policy
+   */
+  void unlink(Node<K, V> node) {
+    final Region region = node.region;
+    if (region == null) {
+      return;
+    }
+    weightedSize -= node.policyWeight;
+    switch (region) {
+      case WINDOW:
+        windowDeque.remove(node);
+        windowWeightedSize -= node.policyWeight;
+        break;
+      case PROBATION:
+        probationDeque.remove(node);
+        break;
+      case PROTECTED:
+        protectedDeque.remove(node);
+        protectedWeightedSize -= node.policyWeight;
+        break;
+      default:
+        throw new AssertionError();
+    }
+    node.region = null;
+  }
+
+  @Override
+  public Iterator<Node<K, V>> ascendingIterator() {
+    final List<Iterator<Node<K, V>>> iterators = new ArrayList<Iterator<Node<K, V>>>(3);
+    iterators.add(probationDeque.iterator());
+    iterators.add(windowDeque.iterator());
+    iterators.add(protectedDeque.iterator());
+    return new ConcatenatedIterator<Node<K, V>>(iterators);
+  }
+
+  @Override
+  public Iterator<Node<K, V>> descendingIterator() {
+    final List<Iterator<Node<K, V>>> iterators = new ArrayList<Iterator<Node<K, V>>>(3);
+    iterators.add(protectedDeque.descendingIterator());
+    iterators.add(windowDeque.descendingIterator());
+    iterators.add(probationDeque.descendingIterator());
+    return new ConcatenatedIterator<Node<K, V>>(iterators);
+  }
+}
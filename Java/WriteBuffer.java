@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.PaddedAtomicLong;
+
+import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.ceilingNextPowerOfTwo;
+
+/**
+ * A bounded, array based buffer that supports multiple producers and a single
+ * consumer. Each element is recorded with an operation code and a weight, so
+ * that a pending write is described without allocating a task object. A
+ * producer that finds the buffer full is rejected so that it may apply
+ * back-pressure, such as by helping the consumer to drain it. Null elements
+ * are prohibited.
+ * <p>
+ * Only one thread may drain at a time, which the map ensures by draining the
+ * buffer while holding its eviction lock. The consumer may observe a slot that
+ * a producer has claimed but not yet published, in which case the drain stops
+ * and the element is consumed by a later drain.
+ *
+ * @param <E> the type of elements held in this buffer
+ */
+@ThreadSafe
+final class WriteBuffer<E> {
+
+  /*
+   * A producer claims a slot by incrementing the producer index, if the buffer
+   * is not full, and then publishes the element into the slot. The consumer
+   * takes the element at the consumer index, clears the slot, and advances the
+   * index. The indexes only increase, so the number of elements is their
+   * difference and a slot is their value modulo the capacity.
+   *
+   * The operation and weight are plain writes into parallel arrays that are
+   * published by the ordered store of the element. The consumer reads them
+   * after observing the element and before releasing the slot by advancing
+   * the consumer index, so a producer cannot reuse the slot too early.
+   */
+
+  final AtomicReferenceArray<E> buffer;
+  final int[] operations;
+  final int[] weights;
+  final PaddedAtomicLong producerIndex;
+  final PaddedAtomicLong consumerIndex;
+  final int mask;
+
+  /**
+   * Creates a buffer that holds up to the capacity, rounded up to the next
+   * power of two.
+   *
+   * @param capacity the maximum number of elements
+   */
+  WriteBuffer(int capacity) {
+    final int length = ceilingNextPowerOfTwo(capacity);
+    buffer = new AtomicReferenceArray<E>(length);
+    operations = new int[length];
+    weights = new int[length];
+    producerIndex = new PaddedAtomicLong();
+    consumerIndex = new PaddedAtomicLong();
+    mask = length - 1;
+  }
+
+  /**
+   * Inserts the element and its operation into the buffer if it is not full.
+   *
+   * @param e the element to add
+   * @param operation the operation to be applied to the element
+   * @param weight the weight associated with the operation
+   * @return if the element was added
+   */
+  boolean offer(E e, int operation, int weight) {
+    for (;;) {
+      final long tail = producerIndex.get();
+      if ((tail - consumerIndex.get()) > mask) {
+        return false;
+      }
+      if (producerIndex.compareAndSet(tail, tail + 1)) {
+        final int index = (int) (tail & mask);
+        operations[index] = operation;
+        weights[index] = weight;
+        buffer.lazySet(index, e);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Removes up to the limit of elements, in insertion order, and passes each
+   * to the consumer. This method must only be called by a single thread at a
+   * time.
+   *
+   * @param consumer the receiver of the elements
+   * @param limit the maximum number of elements to remove
+   * @return the number of elements removed
+   */
+  int drainTo(Consumer<? super E> consumer, int limit) {
+    long head = consumerIndex.get();
+    int drained = 0;
+    while (drained < limit) {
+      final int index = (int) (head & mask);
+      final E e = buffer.get(index);
+      if (e == null) {
+        break;
+      }
+      final int operation = operations[index];
+      final int weight = weights[index];
+      buffer.lazySet(index, null);
+      consumerIndex.lazySet(++head);
+
+      consumer.accept(e, operation, weight);
+      drained++;
+    }
+    return drained;
+  }
+
+  /** Returns the number of elements that have been claimed or published. */
+  int size() {
+    // Read the consumer first so that the difference is never negative
+    final long head = consumerIndex.get();
+    final long tail = producerIndex.get();
+    return (int) (tail - head);
+  }
+
+  /** Returns the maximum number of elements that the buffer may hold. */
+  int capacity() {
+    return mask + 1;
+  }
+
+  /** A receiver of the elements, and their operations, removed by a drain. */
+  interface Consumer<E> {
+
+    /**
+     * Receives an element that was removed from the buffer.
+     *
+     * @param e the element
+     * @param operation the operation recorded with the element
+     * @param weight the weight recorded with the element
+     */
+    void accept(E e, int operation, int weight);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import com.googlecode.concurrentlinkedhashmap.ExecutorTest.QueueingExecutor;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * A unit-test for the map that loads its values asynchronously.
+ */
+@Test(groups = "development")
+public final class AsyncLoadingMapTest extends AbstractTest {
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void buildAsync_withNullExecutor() {
+    new Builder<Integer, String>().maximumWeightedCapacity(10).buildAsync(null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildAsync_withExpiry() {
+    new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expiry(new ExpirationTest.ValueExpiry())
+        .buildAsync(new QueueingExecutor());
+  }
+
+  @Test
+  public void get_sharesLoad() throws Exception {
+    QueueingExecutor executor = new QueueingExecutor();
+    AsyncLoadingMap<Integer, String> map = newMap(executor, new RecordingListener());
+
+    Future<String> future = map.get(3, new RepeatingLoader());
+    assertThat(map.get(3, new RepeatingLoader()), is(sameInstance(future)));
+    assertThat(executor.tasks.size(), is(1));
+    assertThat(map.asMap().weightedSize(), is(1L));
+
+    executor.runAll();
+    assertThat(future.get(), is("xxx"));
+    assertThat(map.asMap().weightedSize(), is(3L));
+  }
+
+  @Test
+  public void get_whenFailed() {
+    QueueingExecutor executor = new QueueingExecutor();
+    AsyncLoadingMap<Integer, String> map = newMap(executor, new RecordingListener());
+
+    map.get(-1, new RepeatingLoader());
+    map.get(0, new RepeatingLoader());
+    assertThat(map.asMap().size(), is(2));
+
+    executor.runAll();
+    assertThat(map.getIfPresent(-1), is(nullValue()));
+    assertThat(map.getIfPresent(0), is(nullValue()));
+    assertThat(map.asMap().weightedSize(), is(0L));
+  }
+
+  @Test
+  public void evict_whenLoaded() {
+    QueueingExecutor executor = new QueueingExecutor();
+    RecordingListener listener = new RecordingListener();
+    AsyncLoadingMap<Integer, String> map = newMap(executor, listener);
+
+    for (int i = 3; i <= 5; i++) {
+      map.get(i, new RepeatingLoader());
+    }
+    assertThat(map.asMap().weightedSize(), is(3L));
+
+    executor.runAll();
+    assertThat(map.asMap().keySet(), contains(4, 5));
+    assertThat(map.asMap().weightedSize(), is(9L));
+    assertThat(listener.evicted, contains("xxx"));
+  }
+
+  @Test
+  public void get_recordsStats() {
+    QueueingExecutor executor = new QueueingExecutor();
+    AsyncLoadingMap<Integer, String> map = new Builder<Integer, String>()
+        .maximumWeightedCapacity(10)
+        .recordStats()
+        .buildAsync(executor);
+
+    map.get(3, new RepeatingLoader());
+    map.get(3, new RepeatingLoader());
+    executor.runAll();
+
+    CacheStats stats = map.asMap().stats();
+    assertThat(stats.hitCount(), is(1L));
+    assertThat(stats.missCount(), is(1L));
+  }
+
+  AsyncLoadingMap<Integer, String> newMap(
+      QueueingExecutor executor, RecordingListener listener) {
+    return new Builder<Integer, String>()
+        .maximumWeightedCapacity(10)
+        .weigher(new EntryWeigher<Integer, String>() {
+          @Override public int weightOf(Integer key, String value) {
+            return value.length();
+          }
+        })
+        .listener(listener)
+        .buildAsync(executor);
+  }
+
+  /**
+   * A loader whose value repeats a character as many times as the key, that
+   * computes null for zero and fails for a negative key.
+   */
+  static final class RepeatingLoader implements Function<Integer, String> {
+
+    @Override
+    public String apply(Integer key) {
+      if (key < 0) {
+        throw new IllegalArgumentException();
+      } else if (key == 0) {
+        return null;
+      }
+      StringBuilder value = new StringBuilder();
+      for (int i = 0; i < key; i++) {
+        value.append('x');
+      }
+      return value.toString();
+    }
+  }
+
+  /** A listener that records the evicted values. */
+  static final class RecordingListener implements EvictionListener<Integer, String> {
+    final List<String> evicted = new ArrayList<String>();
+
+    @Override
+    public void onEviction(Integer key, String value) {
+      evicted.add(value);
+    }
+  }
+}
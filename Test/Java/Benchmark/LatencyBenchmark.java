@@ -0,0 +1,202 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.googlecode.concurrentlinkedhashmap.CacheType;
+import com.googlecode.concurrentlinkedhashmap.caches.CacheFactory;
+import com.googlecode.concurrentlinkedhashmap.generator.ScrambledZipfianGenerator;
+import org.testng.annotations.Test;
+
+import static com.googlecode.concurrentlinkedhashmap.benchmark.Benchmarks.createWorkingSet;
+
+/**
+ * This benchmark evaluates the latency distribution of reads and writes when
+ * the caches are driven at a fixed rate, which exposes the tail spikes that a
+ * throughput benchmark averages away, such as when a caller is chosen to
+ * drain the buffers or notify the listener.
+ * <p>
+ * Each thread issues its operations on a fixed schedule and measures the
+ * latency from when the operation was intended to start rather than when it
+ * started. A stall therefore counts against every operation that it delayed,
+ * rather than only the one that was in flight, which corrects for the
+ * coordinated omission of a closed-loop benchmark. The service time, measured
+ * from the actual start, is reported alongside for comparison. The threads
+ * spin while waiting for their next operation, so the thread counts should
+ * not exceed the number of cores.
+ * <pre>
+ * -Dlatency.caches=...        the cache types (default: a selection)
+ * -Dlatency.threads=1,4,16    the thread counts (default: 1,2,4,8)
+ * -Dlatency.rate=1000000      the target operations per second, across threads
+ * -Dlatency.readRatio=90      the percentage of the operations that are reads
+ * -Dlatency.seconds=10        the duration of the measurement, after a warmup
+ * </pre>
+ */
+public final class LatencyBenchmark {
+  static final String DEFAULT_CACHES = "ConcurrentLinkedHashMap,"
+      + "ConcurrentLinkedHashMap_WindowTinyLfu,ConcurrentLinkedHashMap_Clock,"
+      + "LinkedHashMap_Lru_Lock,Guava";
+  static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9, 99.99 };
+  static final int SIZE = 1 << 16;
+  static final int MASK = SIZE - 1;
+  static final Integer DUMMY = 1;
+
+  final Integer[] keys;
+  final long targetRate;
+  final int readRatio;
+  final long warmupNanos;
+  final long measureNanos;
+
+  LatencyBenchmark(long targetRate, int readRatio, long seconds) {
+    final List<Integer> workingSet = createWorkingSet(new ScrambledZipfianGenerator(SIZE), SIZE);
+    this.keys = workingSet.toArray(new Integer[SIZE]);
+    this.measureNanos = TimeUnit.SECONDS.toNanos(seconds);
+    this.warmupNanos = measureNanos / 2;
+    this.targetRate = targetRate;
+    this.readRatio = readRatio;
+  }
+
+  /** Runs the cache with the number of threads and prints its percentiles. */
+  void run(CacheType cache, int threads) throws InterruptedException {
+    // The capacity is a fraction of the distinct keys, so that the writes
+    // evict and the buffers are drained throughout the run
+    final ConcurrentMap<Integer, Integer> map = new CacheFactory()
+        .maximumCapacity(SIZE / 4)
+        .makeCache(cache);
+    for (int i = 0; i < SIZE / 4; i++) {
+      map.put(keys[i], DUMMY);
+    }
+
+    final long intervalNanos = Math.max(1L, (threads * TimeUnit.SECONDS.toNanos(1)) / targetRate);
+    final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    final CountDownLatch done = new CountDownLatch(threads);
+    final List<Worker> workers = new ArrayList<Worker>(threads);
+    for (int i = 0; i < threads; i++) {
+      final Worker worker = new Worker(map, i * (SIZE / threads), start, intervalNanos, done);
+      workers.add(worker);
+      worker.start();
+    }
+    done.await();
+
+    final Worker total = new Worker(map, 0, start, intervalNanos, done);
+    for (Worker worker : workers) {
+      total.readResponse.add(worker.readResponse);
+      total.writeResponse.add(worker.writeResponse);
+      total.readService.add(worker.readService);
+      total.writeService.add(worker.writeService);
+    }
+    print(cache, threads, "read", "response", total.readResponse);
+    print(cache, threads, "read", "service", total.readService);
+    print(cache, threads, "write", "response", total.writeResponse);
+    print(cache, threads, "write", "service", total.writeService);
+  }
+
+  /** A thread that issues operations on a fixed schedule. */
+  final class Worker extends Thread {
+    final LatencyHistogram readResponse = new LatencyHistogram();
+    final LatencyHistogram writeResponse = new LatencyHistogram();
+    final LatencyHistogram readService = new LatencyHistogram();
+    final LatencyHistogram writeService = new LatencyHistogram();
+    final ConcurrentMap<Integer, Integer> map;
+    final CountDownLatch done;
+    final long intervalNanos;
+    final long start;
+    int index;
+
+    Worker(ConcurrentMap<Integer, Integer> map, int index, long start,
+        long intervalNanos, CountDownLatch done) {
+      this.intervalNanos = intervalNanos;
+      this.index = index;
+      this.start = start;
+      this.done = done;
+      this.map = map;
+    }
+
+    @Override
+    public void run() {
+      try {
+        final long measureStart = start + warmupNanos;
+        final long end = measureStart + measureNanos;
+        for (long intended = start; intended < end; intended += intervalNanos) {
+          // Wait for the scheduled time, unless the thread has fallen behind
+          long now;
+          while ((now = System.nanoTime()) < intended) {}
+
+          final int next = index++;
+          final Integer key = keys[next & MASK];
+          final boolean read = ((next * 0x9e3779b9 >>> 25) < readRatio * 128 / 100);
+          if (read) {
+            map.get(key);
+          } else {
+            map.put(key, DUMMY);
+          }
+
+          if (intended >= measureStart) {
+            final long finished = System.nanoTime();
+            (read ? readResponse : writeResponse).record(finished - intended);
+            (read ? readService : writeService).record(finished - now);
+          }
+        }
+      } finally {
+        done.countDown();
+      }
+    }
+  }
+
+  static void printHeader() {
+    System.out.printf("%-40s %7s %5s %8s %10s", "Cache", "Threads", "Op", "Latency", "Count");
+    for (double percentile : PERCENTILES) {
+      System.out.printf(" %9s", "p" + percentile);
+    }
+    System.out.printf(" %9s%n", "max");
+  }
+
+  static void print(CacheType cache, int threads, String op, String kind,
+      LatencyHistogram histogram) {
+    System.out.printf("%-40s %7d %5s %8s %10d", cache, threads, op, kind, histogram.totalCount());
+    for (double percentile : PERCENTILES) {
+      System.out.printf(" %9.1f", histogram.valueAtPercentile(percentile) / 1000.0);
+    }
+    System.out.printf(" %9.1f%n", histogram.maxValue() / 1000.0);
+  }
+
+  /** Runs the benchmark, printing the latencies in microseconds. */
+  public static void main(String[] args) throws InterruptedException {
+    final String caches = System.getProperty("latency.caches", DEFAULT_CACHES);
+    final String threads = System.getProperty("latency.threads", "1,2,4,8");
+    final LatencyBenchmark benchmark = new LatencyBenchmark(
+        Long.getLong("latency.rate", 1000000L),
+        Integer.getInteger("latency.readRatio", 90),
+        Long.getLong("latency.seconds", 10L));
+
+    printHeader();
+    for (String cache : caches.split(",")) {
+      for (String count : threads.split(",")) {
+        benchmark.run(CacheType.valueOf(cache.trim()), Integer.parseInt(count.trim()));
+      }
+    }
+  }
+
+  @Test(groups = "latency")
+  public static void benchmark() throws InterruptedException {
+    main(new String[] {});
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies in the style of HdrHistogram, which records
+ * values with a bounded relative error in a fixed amount of space. Values
+ * below 128 are recorded exactly, and larger values fall into one of 64
+ * linear sub-buckets within their power of two, so the error is at most
+ * 1/64 (~1.6%) of the value. A histogram is not thread-safe, so each thread
+ * records into its own and the histograms are merged afterwards.
+ *
+ * @see <a href="http://hdrhistogram.org">HdrHistogram</a>
+ */
+public final class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 6;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+  static final int MAX_SHIFT = 63 - SUB_BUCKET_BITS;
+  static final int LENGTH = LINEAR_LIMIT + MAX_SHIFT * SUB_BUCKETS;
+
+  final long[] counts = new long[LENGTH];
+  long totalCount;
+  long maxValue;
+
+  /**
+   * Records the value, where a negative value is recorded as zero.
+   *
+   * @param value the latency, in nanoseconds
+   */
+  public void record(long value) {
+    final long v = Math.max(0L, value);
+    counts[indexOf(v)]++;
+    maxValue = Math.max(maxValue, v);
+    totalCount++;
+  }
+
+  /** Adds the values recorded by the other histogram to this one. */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < LENGTH; i++) {
+      counts[i] += other.counts[i];
+    }
+    maxValue = Math.max(maxValue, other.maxValue);
+    totalCount += other.totalCount;
+  }
+
+  /** Discards all of the recorded values. */
+  public void reset() {
+    Arrays.fill(counts, 0L);
+    totalCount = 0L;
+    maxValue = 0L;
+  }
+
+  /** Returns the number of recorded values. */
+  public long totalCount() {
+    return totalCount;
+  }
+
+  /** Returns the largest recorded value. */
+  public long maxValue() {
+    return maxValue;
+  }
+
+  /**
+   * Returns the value that the given percentage of the recorded values are
+   * less than or equal to, rounded up to the highest value of its bucket.
+   *
+   * @param percentile the percentage, between 0 and 100
+   * @return the value at the percentile, or zero if no values were recorded
+   */
+  public long valueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0L;
+    }
+    final double fraction = Math.min(100.0, Math.max(0.0, percentile)) / 100.0;
+    final long rank = Math.max(1L, (long) Math.ceil(fraction * totalCount));
+    long seen = 0L;
+    for (int i = 0; i < LENGTH; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(maxValue, highestValueAt(i));
+      }
+    }
+    return maxValue;
+  }
+
+  /** Returns the index of the bucket that the non-negative value falls into. */
+  static int indexOf(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    final int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** Returns the highest value that falls into the bucket at the index. */
+  static long highestValueAt(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    final int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+    final long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
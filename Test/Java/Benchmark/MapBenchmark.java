@@ -0,0 +1,174 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.googlecode.concurrentlinkedhashmap.CacheType;
+import com.googlecode.concurrentlinkedhashmap.caches.CacheFactory;
+import com.googlecode.concurrentlinkedhashmap.generator.ScrambledZipfianGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testng.annotations.Test;
+
+import static com.googlecode.concurrentlinkedhashmap.benchmark.Benchmarks.createWorkingSet;
+
+/**
+ * This benchmark evaluates the throughput of the map's operations, single
+ * and multi-threaded, over a Zipfian distribution of keys. Each operation is
+ * measured in isolation and as a mix of reads and writes, for every cache
+ * type and read ratio. The {@link #main} method repeats the run for each
+ * thread count and writes the results as JSON, so that they can be compared
+ * against a baseline to detect a regression.
+ * <pre>
+ * -Dbenchmark.threads=1,4,16   the thread counts (default: 1,2,4,8,16)
+ * -Dbenchmark.results=target   the directory of the JSON results
+ * </pre>
+ *
+ * @see <a href="http://openjdk.java.net/projects/code-tools/jmh/">JMH</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class MapBenchmark {
+  static final int SIZE = 1 << 14;
+  static final int MASK = SIZE - 1;
+  static final Integer DUMMY = 1;
+
+  @Param({
+    "ConcurrentLinkedHashMap",
+    "ConcurrentLinkedHashMap_WindowTinyLfu",
+    "ConcurrentLinkedHashMap_Clock",
+    "ConcurrentHashMap",
+    "LinkedHashMap_Lru_Lock",
+    "Guava"})
+  CacheType cache;
+
+  /** The percentage of the mixed operations that are reads. */
+  @Param({"100", "75", "25"})
+  int readRatio;
+
+  ConcurrentMap<Integer, Integer> map;
+  Integer[] keys;
+
+  @Setup
+  public void setUp() {
+    final List<Integer> workingSet = createWorkingSet(new ScrambledZipfianGenerator(SIZE), SIZE);
+    keys = workingSet.toArray(new Integer[SIZE]);
+
+    // The capacity exceeds the distinct keys so that no entry is evicted
+    map = new CacheFactory()
+        .maximumCapacity(2 * SIZE)
+        .makeCache(cache);
+    for (Integer key : keys) {
+      map.put(key, DUMMY);
+    }
+  }
+
+  /** The position of each thread in the key stream, which starts at random. */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    static final Random random = new Random();
+
+    int index = random.nextInt();
+  }
+
+  @Benchmark
+  public Integer get(ThreadState state) {
+    return map.get(keys[state.index++ & MASK]);
+  }
+
+  @Benchmark
+  public Integer put(ThreadState state) {
+    return map.put(keys[state.index++ & MASK], DUMMY);
+  }
+
+  @Benchmark
+  public Integer putIfAbsent(ThreadState state) {
+    return map.putIfAbsent(keys[state.index++ & MASK], DUMMY);
+  }
+
+  @Benchmark
+  public Integer replace(ThreadState state) {
+    return map.replace(keys[state.index++ & MASK], DUMMY);
+  }
+
+  /** Removes the key and adds it back, so that the map stays populated. */
+  @Benchmark
+  public Integer remove(ThreadState state) {
+    final Integer key = keys[state.index++ & MASK];
+    final Integer value = map.remove(key);
+    map.putIfAbsent(key, DUMMY);
+    return value;
+  }
+
+  /** Reads or writes the next key, in proportion to the read ratio. */
+  @Benchmark
+  public Integer readWrite(ThreadState state) {
+    final int index = state.index++;
+    final Integer key = keys[index & MASK];
+
+    // The index is hashed so that the reads and writes interleave rather than
+    // run in blocks, and the top 7 bits are compared against the ratio
+    return ((index * 0x9e3779b9 >>> 25) < readRatio * 128 / 100)
+        ? map.get(key)
+        : map.put(key, DUMMY);
+  }
+
+  /** Runs the benchmark for each thread count, writing the results as JSON. */
+  public static void main(String[] args) throws RunnerException {
+    final String results = System.getProperty("benchmark.results", "target");
+    final String threads = System.getProperty("benchmark.threads", "1,2,4,8,16");
+    new File(results).mkdirs();
+
+    for (String count : threads.split(",")) {
+      final int threadCount = Integer.parseInt(count.trim());
+      final Options options = new OptionsBuilder()
+          .include(MapBenchmark.class.getName() + "\\.")
+          .threads(threadCount)
+          .resultFormat(ResultFormatType.JSON)
+          .result(new File(results, "map-benchmark-" + threadCount + ".json").getPath())
+          .build();
+      new Runner(options).run();
+    }
+  }
+
+  @Test(groups = "jmh")
+  public static void benchmark() throws RunnerException {
+    main(new String[] {});
+  }
+}
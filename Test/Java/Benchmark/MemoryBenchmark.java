@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.googlecode.concurrentlinkedhashmap.CacheType;
+import com.googlecode.concurrentlinkedhashmap.caches.CacheFactory;
+import org.testng.annotations.Test;
+
+/**
+ * This benchmark estimates the memory footprint of each cache type, as the
+ * fixed overhead of a map and the average cost of an entry at several sizes.
+ * The keys and values are allocated before the maps, so the cost of an entry
+ * is that of the cache's structures, such as the hash table's node and the
+ * map's eviction node, rather than of the data itself.
+ * <p>
+ * The footprint is measured as the growth of the used heap after repeated
+ * garbage collections, so it is an estimate that is most accurate when the
+ * benchmark runs alone in a JVM with a fixed heap size. The fixed overhead is
+ * measured both for an empty map and after it has been read concurrently by
+ * every core, as a map allocates its read buffers on demand as contention
+ * is observed.
+ * <pre>
+ * -Dmemory.caches=...             the cache types (default: all)
+ * -Dmemory.sizes=1000,10000       the number of entries (default: 1k, 10k, 100k)
+ * </pre>
+ */
+public final class MemoryBenchmark {
+  static final int EMPTY_MAPS = 100;
+  static final int READS_PER_THREAD = 10000;
+
+  final int[] sizes;
+  final Integer[] keys;
+  final ExecutorService executor;
+
+  MemoryBenchmark(int[] sizes) {
+    int maximum = 0;
+    for (int size : sizes) {
+      maximum = Math.max(maximum, size);
+    }
+    this.sizes = sizes.clone();
+    this.keys = new Integer[maximum];
+    for (int i = 0; i < maximum; i++) {
+      // Allocated outside of the boxing cache, so that every key is distinct
+      keys[i] = new Integer(i);
+    }
+    this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  /** Prints a row of the footprint of the cache type, in bytes. */
+  void run(CacheType cache) throws InterruptedException, ExecutionException {
+    final long empty = mapOverhead(cache, false);
+    final long read = mapOverhead(cache, true);
+    System.out.printf("%-46s %12d %12d", cache, empty, read);
+    for (int size : sizes) {
+      System.out.printf(" %12.1f", entryOverhead(cache, size, empty));
+    }
+    System.out.println();
+  }
+
+  /** Returns the average footprint of an empty map, optionally after concurrent reads. */
+  long mapOverhead(CacheType cache, boolean read)
+      throws InterruptedException, ExecutionException {
+    final List<Map<Integer, Integer>> maps = new ArrayList<Map<Integer, Integer>>(EMPTY_MAPS);
+    final long before = usedMemory();
+    for (int i = 0; i < EMPTY_MAPS; i++) {
+      final Map<Integer, Integer> map = newMap(cache, 16);
+      if (read) {
+        readConcurrently(map);
+      }
+      maps.add(map);
+    }
+    final long after = usedMemory();
+    return (after - before) / maps.size();
+  }
+
+  /** Returns the average footprint of an entry in a map of the given size. */
+  double entryOverhead(CacheType cache, int size, long mapOverhead) {
+    final long before = usedMemory();
+    final Map<Integer, Integer> map = newMap(cache, size);
+    for (int i = 0; i < size; i++) {
+      map.put(keys[i], keys[i]);
+    }
+    final long after = usedMemory();
+    if (map.size() == 0) {
+      throw new AssertionError();
+    }
+    return (after - before - mapOverhead) / (double) size;
+  }
+
+  /** Reads the map from every core at once, so that it observes contention. */
+  void readConcurrently(final Map<Integer, Integer> map)
+      throws InterruptedException, ExecutionException {
+    map.put(keys[0], keys[0]);
+    final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
+      futures.add(executor.submit(new Callable<Object>() {
+        @Override public Object call() {
+          for (int j = 0; j < READS_PER_THREAD; j++) {
+            map.get(keys[0]);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Object> future : futures) {
+      future.get();
+    }
+    map.clear();
+  }
+
+  static Map<Integer, Integer> newMap(CacheType cache, int capacity) {
+    return new CacheFactory()
+        .initialCapacity(capacity)
+        .maximumCapacity(capacity)
+        .makeCache(cache);
+  }
+
+  /** Returns the used heap once repeated collections no longer reclaim memory. */
+  static long usedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 20; i++) {
+      System.gc();
+      System.runFinalization();
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      final long current = runtime.totalMemory() - runtime.freeMemory();
+      if ((i >= 3) && (current >= used)) {
+        return current;
+      }
+      used = Math.min(used, current);
+    }
+    return used;
+  }
+
+  void printHeader() {
+    System.out.printf("%-46s %12s %12s", "Cache", "Empty map", "Read map");
+    for (int size : sizes) {
+      System.out.printf(" %12s", "Entry@" + size);
+    }
+    System.out.println();
+  }
+
+  /** Runs the benchmark, printing the footprints in bytes. */
+  public static void main(String[] args) throws InterruptedException, ExecutionException {
+    final String[] sizes = System.getProperty("memory.sizes", "1000,10000,100000").split(",");
+    final int[] parsed = new int[sizes.length];
+    for (int i = 0; i < sizes.length; i++) {
+      parsed[i] = Integer.parseInt(sizes[i].trim());
+    }
+
+    final List<CacheType> caches = new ArrayList<CacheType>();
+    final String names = System.getProperty("memory.caches");
+    if (names == null) {
+      for (CacheType cache : CacheType.values()) {
+        caches.add(cache);
+      }
+    } else {
+      for (String name : names.split(",")) {
+        caches.add(CacheType.valueOf(name.trim()));
+      }
+    }
+
+    final MemoryBenchmark benchmark = new MemoryBenchmark(parsed);
+    try {
+      benchmark.printHeader();
+      for (CacheType cache : caches) {
+        benchmark.run(cache);
+      }
+    } finally {
+      benchmark.executor.shutdownNow();
+    }
+  }
+
+  @Test(groups = "memory")
+  public static void benchmark() throws InterruptedException, ExecutionException {
+    main(new String[] {});
+  }
+}
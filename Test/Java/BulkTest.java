@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.WRITE_BUFFER_DRAIN_THRESHOLD;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A unit-test for the bulk operations that record their work as a batch.
+ */
+@Test(groups = "development")
+public final class BulkTest extends AbstractTest {
+
+  @Test(dataProvider = "emptyMap")
+  public void putAll_evicts(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.putAll(newEntries(0, 2 * (int) capacity()));
+    assertThat(map.size(), is((int) capacity()));
+    assertThat(map.weightedSize(), is(capacity()));
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void putAll_drainsOnce(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    int batchSize = 4 * WRITE_BUFFER_DRAIN_THRESHOLD;
+    map.putAll(newEntries(0, batchSize));
+    assertThat(map.writeBuffer.size(), is(0));
+    assertThat(map.bufferStats().drainsAfterWrite(), is(1L));
+    assertThat(map.weightedSize(), is((long) batchSize));
+  }
+
+  @Test(dataProvider = "guardedMap")
+  public void getAll(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.putAll(newEntries(0, 10));
+    assertThat(map.getAll(Arrays.asList(3, 100, 2)).keySet(), contains(3, 2));
+  }
+
+  @Test(dataProvider = "guardedMap")
+  public void getAll_withLoader(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.putAll(newEntries(0, 10));
+
+    final AtomicInteger loads = new AtomicInteger();
+    Map<Integer, Integer> result = map.getAll(Arrays.asList(3, 100, 2, 101),
+        new Function<Set<Integer>, Map<Integer, Integer>>() {
+          @Override public Map<Integer, Integer> apply(Set<Integer> keys) {
+            loads.incrementAndGet();
+            assertThat(keys, contains(100, 101));
+            return newEntries(100, 101);
+          }
+        });
+    assertThat(loads.get(), is(1));
+    assertThat(result.keySet(), contains(3, 100, 2));
+    assertThat(map.get(100), is(100));
+    assertThat(map.containsKey(101), is(false));
+  }
+
+  @Test(dataProvider = "guardedMap")
+  public void removeAll(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.putAll(newEntries(0, 10));
+    map.removeAll(Arrays.asList(1, 2, 3, 100));
+    assertThat(map.size(), is(7));
+    assertThat(map.weightedSize(), is(7L));
+  }
+
+  /** Returns the entries for the keys in the range, mapped to themselves. */
+  static Map<Integer, Integer> newEntries(int from, int to) {
+    Map<Integer, Integer> entries = new HashMap<Integer, Integer>();
+    for (int i = from; i < to; i++) {
+      entries.put(i, i);
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A unit-test for publishing the map as a management bean.
+ */
+@Test(groups = "development")
+public final class CacheMXBeanTest extends AbstractTest {
+
+  @Test(dataProvider = "statsMap", expectedExceptions = NullPointerException.class)
+  public void register_withNullName(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    CacheMXBeans.register(map, null);
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void register(ConcurrentLinkedHashMap<Integer, Integer> map) throws Exception {
+    warmUp(map, 0, 2 * capacity());
+    map.get((int) (2 * capacity()) - 1);
+    map.get(0);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = CacheMXBeans.register(map, "register");
+    try {
+      assertThat((Integer) server.getAttribute(name, "Size"), is((int) capacity()));
+      assertThat((Long) server.getAttribute(name, "Capacity"), is(capacity()));
+      assertThat((Double) server.getAttribute(name, "HitRate"), is(0.5));
+      assertThat((Long) server.getAttribute(name, "EvictionCount"), is(capacity()));
+
+      server.setAttribute(name, new Attribute("Capacity", capacity() / 2));
+      assertThat(map.capacity(), is(capacity() / 2));
+      assertThat(map.size(), is((int) capacity() / 2));
+    } finally {
+      CacheMXBeans.unregister("register");
+    }
+    assertThat(server.isRegistered(name), is(false));
+  }
+
+  @Test(dataProvider = "statsMap", expectedExceptions = IllegalStateException.class)
+  public void register_whenRegistered(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    CacheMXBeans.register(map, "duplicate");
+    try {
+      CacheMXBeans.register(map, "duplicate");
+    } finally {
+      CacheMXBeans.unregister("duplicate");
+    }
+  }
+}
@@ -58,6 +58,81 @@ public enum CacheType {
     }
   },
 
+  /** A concurrent linked hash map using the Window TinyLFU policy. */
+  ConcurrentLinkedHashMap_WindowTinyLfu() {
+    @Override public <K, V> ConcurrentMap<K, V> create(CacheFactory builder) {
+      return new Builder<K, V>()
+          .initialCapacity(builder.initialCapacity)
+          .concurrencyLevel(builder.concurrencyLevel)
+          .maximumWeightedCapacity(builder.maximumCapacity)
+          .policy(EvictionPolicies.windowTinyLfu())
+          .build();
+    }
+    @Override public Policy policy() {
+      return Policy.WINDOW_TINY_LFU;
+    }
+  },
+
+  /** A concurrent linked hash map using the adaptive Window TinyLFU policy. */
+  ConcurrentLinkedHashMap_AdaptiveWindowTinyLfu() {
+    @Override public <K, V> ConcurrentMap<K, V> create(CacheFactory builder) {
+      return new Builder<K, V>()
+          .initialCapacity(builder.initialCapacity)
+          .concurrencyLevel(builder.concurrencyLevel)
+          .maximumWeightedCapacity(builder.maximumCapacity)
+          .policy(EvictionPolicies.adaptiveWindowTinyLfu())
+          .build();
+    }
+    @Override public Policy policy() {
+      return Policy.WINDOW_TINY_LFU;
+    }
+  },
+
+  /** A concurrent linked hash map using the LIRS policy. */
+  ConcurrentLinkedHashMap_Lirs() {
+    @Override public <K, V> ConcurrentMap<K, V> create(CacheFactory builder) {
+      return new Builder<K, V>()
+          .initialCapacity(builder.initialCapacity)
+          .concurrencyLevel(builder.concurrencyLevel)
+          .maximumWeightedCapacity(builder.maximumCapacity)
+          .policy(EvictionPolicies.lirs())
+          .build();
+    }
+    @Override public Policy policy() {
+      return Policy.LIRS;
+    }
+  },
+
+  /** A concurrent linked hash map using the CLOCK policy. */
+  ConcurrentLinkedHashMap_Clock() {
+    @Override public <K, V> ConcurrentMap<K, V> create(CacheFactory builder) {
+      return new Builder<K, V>()
+          .initialCapacity(builder.initialCapacity)
+          .concurrencyLevel(builder.concurrencyLevel)
+          .maximumWeightedCapacity(builder.maximumCapacity)
+          .policy(EvictionPolicies.clock())
+          .build();
+    }
+    @Override public Policy policy() {
+      return Policy.SECOND_CHANCE;
+    }
+  },
+
+  /** A concurrent linked hash map using the ARC policy. */
+  ConcurrentLinkedHashMap_Arc() {
+    @Override public <K, V> ConcurrentMap<K, V> create(CacheFactory builder) {
+      return new Builder<K, V>()
+          .initialCapacity(builder.initialCapacity)
+          .concurrencyLevel(builder.concurrencyLevel)
+          .maximumWeightedCapacity(builder.maximumCapacity)
+          .policy(EvictionPolicies.arc())
+          .build();
+    }
+    @Override public Policy policy() {
+      return Policy.ARC;
+    }
+  },
+
   /** A concurrent map using a first-in, first-out eviction policy. */
   Concurrent_Fifo() {
     @Override public <K, V> ConcurrentMap<K, V> create(CacheFactory builder) {
@@ -261,8 +336,10 @@ public enum CacheType {
     LFU,
     LRU,
     LRU_SEGMENTED,
+    WINDOW_TINY_LFU,
     LIRS,
-    LIRS_APPROX
+    LIRS_APPROX,
+    ARC
   }
 
   /** Creates the cache instance. */
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * A unit-test for computing the mappings of the map atomically.
+ */
+@Test(groups = "development")
+public final class ComputeTest extends AbstractTest {
+
+  @Test(dataProvider = "guardedMap", expectedExceptions = NullPointerException.class)
+  public void get_withNullLoader(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.get(1, null);
+  }
+
+  @Test(dataProvider = "guardedMap")
+  public void get_loadsOnce(final ConcurrentLinkedHashMap<Integer, Integer> map)
+      throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Function<Integer, Integer> loader = new Function<Integer, Integer>() {
+      @Override public Integer apply(Integer key) {
+        loads.incrementAndGet();
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return -key;
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Callable<Integer> task = new Callable<Integer>() {
+        @Override public Integer call() {
+          return map.get(1, loader);
+        }
+      };
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(task));
+      }
+      latch.countDown();
+      for (Future<Integer> future : futures) {
+        assertThat(future.get(), is(-1));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(loads.get(), is(1));
+    assertThat(map.weightedSize(), is(1L));
+  }
+
+  @Test(dataProvider = "guardedMap")
+  public void get_whenPresent(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.put(1, 1);
+    assertThat(map.get(1, new Function<Integer, Integer>() {
+      @Override public Integer apply(Integer key) {
+        throw new AssertionError();
+      }
+    }), is(1));
+  }
+
+  @Test(dataProvider = "guardedMap")
+  public void remap(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    BiFunction<Integer, Integer, Integer> increment = new BiFunction<Integer, Integer, Integer>() {
+      @Override public Integer apply(Integer key, Integer value) {
+        return (value == null) ? Integer.valueOf(1) : ((value == 2) ? null : value + 1);
+      }
+    };
+    assertThat(map.remapIfPresent(1, increment), is(nullValue()));
+    assertThat(map.remap(1, increment), is(1));
+    assertThat(map.remapIfPresent(1, increment), is(2));
+    assertThat(map.remap(1, increment), is(nullValue()));
+    assertThat(map.containsKey(1), is(false));
+    assertThat(map.weightedSize(), is(0L));
+  }
+
+  @Test(dataProvider = "guardedMap")
+  public void mergeValue(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    BiFunction<Integer, Integer, Integer> sum = new BiFunction<Integer, Integer, Integer>() {
+      @Override public Integer apply(Integer oldValue, Integer value) {
+        return oldValue + value;
+      }
+    };
+    assertThat(map.mergeValue(1, 2, sum), is(2));
+    assertThat(map.mergeValue(1, 3, sum), is(5));
+    assertThat(map.get(1), is(5));
+  }
+
+  @Test(dataProvider = "emptyMap")
+  public void get_evicts(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    for (int i = 0; i < 2 * capacity(); i++) {
+      map.get(i, new Function<Integer, Integer>() {
+        @Override public Integer apply(Integer key) {
+          return key;
+        }
+      });
+    }
+    assertThat(map.size(), is((int) capacity()));
+    assertThat(map.weightedSize(), is(capacity()));
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.Set;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.testng.Assert.fail;
+
+/**
+ * A unit-test for plugging a page replacement policy into the map.
+ */
+@Test(groups = "development")
+public final class EvictionPolicyTest extends AbstractTest {
+
+  @Test(expectedExceptions = AssertionError.class)
+  public void constructor() throws Throwable {
+    try {
+      Constructor<?> constructors[] = EvictionPolicies.class.getDeclaredConstructors();
+      assertThat(constructors.length, is(1));
+      constructors[0].setAccessible(true);
+      constructors[0].newInstance((Object[]) null);
+      fail("Expected a failure to instantiate");
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void policy_withNull() {
+    new Builder<Integer, Integer>().policy(null);
+  }
+
+  @Test
+  public void policy_lruByDefault() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(3)
+        .build();
+    assertThat(map.policy, is(instanceOf(LruPolicy.class)));
+  }
+
+  @Test
+  public void policy_custom() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(3)
+        .policy(FifoPolicy.FACTORY)
+        .build();
+    map.put(1, 1);
+    map.put(2, 2);
+    map.put(3, 3);
+    map.get(1);
+    map.put(4, 4);
+
+    assertThat(map.containsKey(1), is(false));
+    assertThat(map.ascendingKeySet(), contains(2, 3, 4));
+  }
+
+  @Test
+  public void lirs_scanResistant() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(100)
+        .policy(EvictionPolicies.lirs())
+        .build();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    for (int i = 0; i < 100; i++) {
+      map.get(i);
+    }
+    for (int i = 1000; i < 1500; i++) {
+      map.put(i, i);
+    }
+
+    int retained = 0;
+    for (int i = 0; i < 100; i++) {
+      if (map.getQuietly(i) != null) {
+        retained++;
+      }
+    }
+    assertThat(retained, is(99));
+  }
+
+  @Test
+  public void windowTinyLfu_scanResistant() {
+    // The frequently read entries survive a scan of one-hit wonders that
+    // flushes them under LRU, as the scanned entries are not admitted
+    assertThat(retainedAfterScan(EvictionPolicies.windowTinyLfu()), is(10));
+    assertThat(retainedAfterScan(EvictionPolicies.lru()), is(0));
+  }
+
+  /**
+   * Returns how many of the ten most frequently read entries are retained
+   * after a scan of ten times the capacity.
+   */
+  static int retainedAfterScan(EvictionPolicy.Factory policy) {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(100)
+        .policy(policy)
+        .build();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    for (int reads = 0; reads < 5; reads++) {
+      for (int i = 0; i < 10; i++) {
+        map.get(i);
+      }
+    }
+    for (int i = 1000; i < 2000; i++) {
+      map.put(i, i);
+    }
+
+    int retained = 0;
+    for (int i = 0; i < 10; i++) {
+      if (map.getQuietly(i) != null) {
+        retained++;
+      }
+    }
+    return retained;
+  }
+
+  @Test
+  public void lirs_nonResidentPromotedToHot() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(3)
+        .policy(EvictionPolicies.lirs())
+        .build();
+    map.put(1, 1);
+    map.put(2, 2);
+    map.put(3, 3);
+    map.put(4, 4);
+    assertThat(map.ascendingKeySet(), contains(4, 1, 2));
+
+    // The evicted key is still on the stack, so it displaces a hot entry
+    map.put(3, 3);
+    assertThat(map.ascendingKeySet(), contains(1, 2, 3));
+  }
+
+  @Test
+  public void lirs_boundedNonResidents() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .policy(EvictionPolicies.lirs())
+        .build();
+    for (int i = 0; i < 10000; i++) {
+      map.put(i, i);
+    }
+
+    LirsPolicy<Integer, Integer> policy = (LirsPolicy<Integer, Integer>) map.policy;
+    assertThat(policy.nonResidentSize, is(10L));
+    assertThat(policy.entries.size(), is(20));
+  }
+
+  @Test
+  public void lirs_nonResidentsBoundedByEntryCount() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(100)
+        .weigher(new Weigher<Integer>() {
+          @Override public int weightOf(Integer value) {
+            return 5;
+          }
+        })
+        .policy(EvictionPolicies.lirs())
+        .build();
+    for (int i = 0; i < 10000; i++) {
+      map.put(i, i);
+    }
+
+    LirsPolicy<Integer, Integer> policy = (LirsPolicy<Integer, Integer>) map.policy;
+    assertThat(map.size(), is(20));
+    assertThat(policy.nonResidentSize, is(20L));
+  }
+
+  @Test
+  public void lirs_weightedHotSetBounded() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(1000)
+        .weigher(new Weigher<Integer>() {
+          @Override public int weightOf(Integer value) {
+            return value;
+          }
+        })
+        .policy(EvictionPolicies.lirs())
+        .build();
+    map.put(1, 985);
+    map.put(2, 10);
+
+    LirsPolicy<Integer, Integer> policy = (LirsPolicy<Integer, Integer>) map.policy;
+    assertThat(map.size(), is(2));
+    assertThat(policy.hotSize, is(lessThanOrEqualTo(policy.maximumHotSize)));
+  }
+
+  @Test
+  public void clock_readsBypassBuffers() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(3)
+        .policy(EvictionPolicies.clock())
+        .build();
+    map.put(1, 1);
+    for (int i = 0; i < 100; i++) {
+      map.get(1);
+    }
+
+    assertThat(map.data.get(1).referenced, is(true));
+    assertThat(map.readBuffers, is(nullValue()));
+  }
+
+  @Test
+  public void clock_secondChance() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(3)
+        .policy(EvictionPolicies.clock())
+        .build();
+    map.put(1, 1);
+    map.put(2, 2);
+    map.put(3, 3);
+    map.get(1);
+    map.put(4, 4);
+
+    assertThat(map.containsKey(2), is(false));
+    assertThat(map.ascendingKeySet(), contains(3, 4, 1));
+    assertThat(map.data.get(1).referenced, is(false));
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void adaptationTarget_notAdaptive() {
+    new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(3)
+        .build()
+        .adaptationTarget();
+  }
+
+  @Test
+  public void arc_ghostHitAdaptsTarget() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(2)
+        .policy(EvictionPolicies.arc())
+        .build();
+    map.put(1, 1);
+    map.get(1);
+    map.put(2, 2);
+    map.put(3, 3);
+    assertThat(map.containsKey(2), is(false));
+    assertThat(map.adaptationTarget(), is(0L));
+
+    // The reloaded key was remembered in B1, so T1 is allowed to grow
+    map.put(2, 2);
+    assertThat(map.adaptationTarget(), is(1L));
+    assertThat(map.ascendingKeySet(), contains(2, 3));
+  }
+
+  @Test
+  public void arc_boundedGhosts() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .policy(EvictionPolicies.arc())
+        .build();
+    for (int i = 0; i < 10000; i++) {
+      map.put(i, i);
+      map.get(i - 3);
+    }
+
+    ArcPolicy<Integer, Integer> policy = (ArcPolicy<Integer, Integer>) map.policy;
+    assertThat(policy.b1.size() + policy.b2.size(), is(lessThanOrEqualTo(10)));
+    assertThat(policy.b1Size + policy.b2Size, is(lessThanOrEqualTo(map.capacity())));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void adaptiveWindowTinyLfu_withZeroSampleSize() {
+    EvictionPolicies.adaptiveWindowTinyLfu(0);
+  }
+
+  @Test
+  public void adaptiveWindowTinyLfu_growsWindowForRecency() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(100)
+        .policy(EvictionPolicies.adaptiveWindowTinyLfu(500))
+        .build();
+    assertThat(map.adaptationTarget(), is(1L));
+
+    // Each key is reused shortly after it is first seen and then never again
+    Random random = new Random(1);
+    for (int i = 0; i < 50000; i++) {
+      int key = (i / 2) - random.nextInt(60);
+      if (map.get(key) == null) {
+        map.put(key, key);
+      }
+    }
+    assertThat(map.adaptationTarget(), is(greaterThan(25L)));
+  }
+
+  @Test
+  public void adaptiveWindowTinyLfu_adaptsSmallCapacity() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(8)
+        .policy(EvictionPolicies.adaptiveWindowTinyLfu(50))
+        .build();
+    assertThat(map.adaptationTarget(), is(0L));
+
+    // The step is a fraction of an entry, so it must be rounded up to move
+    Random random = new Random(1);
+    for (int i = 0; i < 50000; i++) {
+      int key = (i / 2) - random.nextInt(6);
+      if (map.get(key) == null) {
+        map.put(key, key);
+      }
+    }
+    assertThat(map.adaptationTarget(), is(greaterThan(0L)));
+  }
+
+  /** A first-in, first-out policy that ignores accesses. */
+  static final class FifoPolicy<K, V> implements EvictionPolicy<K, V> {
+    static final EvictionPolicy.Factory FACTORY = new EvictionPolicy.Factory() {
+      @Override public <K, V> EvictionPolicy<K, V> create() {
+        return new FifoPolicy<K, V>();
+      }
+    };
+
+    final Set<Entry<K, V>> entries = new LinkedHashSet<Entry<K, V>>();
+
+    @Override public void setCapacity(long capacity) {}
+    @Override public void onAdd(Entry<K, V> entry, int weight) {
+      entries.add(entry);
+    }
+    @Override public void onAccess(Entry<K, V> entry) {}
+    @Override public void onUpdate(Entry<K, V> entry, int weightDifference) {}
+    @Override public void onRemove(Entry<K, V> entry) {
+      entries.remove(entry);
+    }
+    @Override public Entry<K, V> selectVictim() {
+      Iterator<Entry<K, V>> iterator = entries.iterator();
+      if (!iterator.hasNext()) {
+        return null;
+      }
+      Entry<K, V> victim = iterator.next();
+      iterator.remove();
+      return victim;
+    }
+    @Override public Iterator<Entry<K, V>> ascendingIterator() {
+      return entries.iterator();
+    }
+    @Override public Iterator<Entry<K, V>> descendingIterator() {
+      return new LinkedList<Entry<K, V>>(entries).descendingIterator();
+    }
+  }
+}
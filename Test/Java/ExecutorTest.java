@@ -0,0 +1,189 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.DrainStatus;
+import org.testng.annotations.Test;
+
+import static com.google.common.collect.Maps.immutableEntry;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A unit-test for performing the map's maintenance work and delivering its
+ * notifications on an executor.
+ */
+@Test(groups = "development")
+public final class ExecutorTest extends AbstractTest {
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void executor_withNull() {
+    new Builder<Integer, Integer>().executor(null);
+  }
+
+  @Test
+  public void executor_defersDrain() {
+    QueueingExecutor executor = new QueueingExecutor();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .executor(executor)
+        .build();
+    for (int i = 0; i < 20; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.size(), is(20));
+    assertThat(executor.tasks.isEmpty(), is(false));
+
+    executor.runAll();
+    assertThat(map.size(), is(10));
+    assertThat(map.weightedSize(), is(10L));
+  }
+
+  @Test
+  public void executor_schedulesOneDrainAtATime() {
+    QueueingExecutor executor = new QueueingExecutor();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(100)
+        .executor(executor)
+        .build();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    assertThat(executor.tasks.size(), is(1));
+
+    executor.runAll();
+    assertThat(map.writeBuffer.size(), is(0));
+    assertThat(map.drainStatus.get(), is(DrainStatus.IDLE));
+  }
+
+  @Test
+  public void executor_rejected() {
+    Executor executor = new Executor() {
+      @Override public void execute(Runnable task) {
+        throw new RejectedExecutionException();
+      }
+    };
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .executor(executor)
+        .build();
+    for (int i = 0; i < 20; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.size(), is(10));
+  }
+
+  @Test
+  public void executor_throws() {
+    Executor executor = new Executor() {
+      @Override public void execute(Runnable task) {
+        throw new IllegalStateException();
+      }
+    };
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .executor(executor)
+        .build();
+    for (int i = 0; i < 20; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.size(), is(10));
+    assertThat(map.drainStatus.get(), is(DrainStatus.IDLE));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void batchListener_withNullExecutor() {
+    new Builder<Integer, Integer>().listener(new RecordingListener(), null);
+  }
+
+  @Test
+  public void batchListener_deliversOnExecutor() {
+    QueueingExecutor executor = new QueueingExecutor();
+    RecordingListener listener = new RecordingListener();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .listener(listener, executor)
+        .build();
+    for (int i = 0; i < 15; i++) {
+      map.put(i, -i);
+    }
+    assertThat(listener.batches.isEmpty(), is(true));
+    assertThat(executor.tasks.size(), is(1));
+
+    executor.runAll();
+    assertThat(listener.batches.size(), is(1));
+    List<Entry<Integer, Integer>> batch = listener.batches.get(0);
+    assertThat(batch.size(), is(5));
+    assertThat(batch.get(0), is(immutableEntry(0, 0)));
+    assertThat(batch.get(4), is(immutableEntry(4, -4)));
+  }
+
+  @Test
+  public void batchListener_rejected() {
+    Executor executor = new Executor() {
+      @Override public void execute(Runnable task) {
+        throw new RejectedExecutionException();
+      }
+    };
+    RecordingListener listener = new RecordingListener();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .listener(listener, executor)
+        .build();
+    for (int i = 0; i < 15; i++) {
+      map.put(i, i);
+    }
+    int notified = 0;
+    for (List<Entry<Integer, Integer>> batch : listener.batches) {
+      notified += batch.size();
+    }
+    assertThat(notified, is(5));
+  }
+
+  /** A batch listener that records the batches that it receives. */
+  static final class RecordingListener implements BatchEvictionListener<Integer, Integer> {
+    final List<List<Entry<Integer, Integer>>> batches =
+        new ArrayList<List<Entry<Integer, Integer>>>();
+
+    @Override
+    public void onEviction(List<Entry<Integer, Integer>> entries) {
+      batches.add(entries);
+    }
+  }
+
+  /** An executor that holds the tasks until they are explicitly run. */
+  static final class QueueingExecutor implements Executor {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        tasks.remove(0).run();
+      }
+    }
+  }
+}
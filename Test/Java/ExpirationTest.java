@@ -0,0 +1,235 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * A unit-test for the expiration of entries after a fixed duration.
+ */
+@Test(groups = "development")
+public final class ExpirationTest extends AbstractTest {
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void expireAfterWrite_withNegative() {
+    new Builder<Integer, Integer>().expireAfterWrite(-1, MINUTES);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void expireAfterAccess_withNullUnit() {
+    new Builder<Integer, Integer>().expireAfterAccess(1, null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void ticker_withNull() {
+    new Builder<Integer, Integer>().ticker(null);
+  }
+
+  @Test
+  public void expireAfterWrite() {
+    FakeTicker ticker = new FakeTicker();
+    RecordingListener listener = new RecordingListener();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expireAfterWrite(1, MINUTES)
+        .listener(listener)
+        .ticker(ticker)
+        .build();
+    map.put(1, 1);
+    map.put(2, 2);
+
+    ticker.advance(30, SECONDS);
+    map.put(2, 3);
+    assertThat(map.get(1), is(1));
+
+    ticker.advance(30, SECONDS);
+    assertThat(map.containsKey(1), is(false));
+    assertThat(map.get(1), is(nullValue()));
+    assertThat(map.get(2), is(3));
+    assertThat(map.size(), is(1));
+    assertThat(listener.evicted, contains(1));
+  }
+
+  @Test
+  public void expireAfterAccess() {
+    FakeTicker ticker = new FakeTicker();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expireAfterAccess(1, MINUTES)
+        .ticker(ticker)
+        .build();
+    map.put(1, 1);
+    map.put(2, 2);
+
+    ticker.advance(45, SECONDS);
+    assertThat(map.get(1), is(1));
+
+    ticker.advance(45, SECONDS);
+    assertThat(map.get(1), is(1));
+    assertThat(map.get(2), is(nullValue()));
+    assertThat(map.size(), is(1));
+    assertThat(map.weightedSize(), is(1L));
+  }
+
+  @Test
+  public void putIfAbsent_whenExpired() {
+    FakeTicker ticker = new FakeTicker();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expireAfterWrite(1, MINUTES)
+        .ticker(ticker)
+        .build();
+    map.put(1, 1);
+
+    ticker.advance(1, MINUTES);
+    assertThat(map.putIfAbsent(1, 2), is(nullValue()));
+    assertThat(map.get(1), is(2));
+  }
+
+  @Test
+  public void removeConditionally_whenExpired() {
+    FakeTicker ticker = new FakeTicker();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expireAfterWrite(1, MINUTES)
+        .ticker(ticker)
+        .build();
+    map.put(1, 1);
+
+    ticker.advance(1, MINUTES);
+    assertThat(map.get(1), is(nullValue()));
+    assertThat(map.remove(1, 1), is(false));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void expiry_withNull() {
+    new Builder<Integer, Integer>().expiry(null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void put_withDuration_withoutExpiry() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .build();
+    map.put(1, 1, 1, MINUTES);
+  }
+
+  @Test
+  public void expireVariably() {
+    FakeTicker ticker = new FakeTicker();
+    RecordingListener listener = new RecordingListener();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expiry(new ValueExpiry())
+        .listener(listener)
+        .ticker(ticker)
+        .build();
+    map.put(1, 30);
+    map.put(2, 90);
+    map.put(3, 1, 10, MINUTES);
+
+    ticker.advance(1, MINUTES);
+    assertThat(map.get(1), is(nullValue()));
+    assertThat(map.get(2), is(90));
+    assertThat(map.get(3), is(1));
+    assertThat(listener.evicted, contains(1));
+
+    ticker.advance(1, MINUTES);
+    map.put(4, 60);
+    assertThat(map.containsKey(2), is(false));
+    assertThat(map.keySet(), contains(3, 4));
+    assertThat(listener.evicted, contains(1, 2));
+  }
+
+  @Test
+  public void expireVariably_update() {
+    FakeTicker ticker = new FakeTicker();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expiry(new ValueExpiry())
+        .ticker(ticker)
+        .build();
+    map.put(1, 30);
+    map.replace(1, 600);
+
+    ticker.advance(5, MINUTES);
+    map.put(2, 1, 1, SECONDS);
+    assertThat(map.get(1), is(600));
+
+    ticker.advance(1, MINUTES);
+    map.put(1, 1, 1, SECONDS);
+    ticker.advance(5, SECONDS);
+    assertThat(map.get(1), is(nullValue()));
+    assertThat(map.getQuietly(2), is(nullValue()));
+  }
+
+  /** An expiry whose duration, in seconds, is the entry's value. */
+  static final class ValueExpiry implements Expiry<Integer, Integer> {
+
+    @Override
+    public long expireAfterCreate(Integer key, Integer value, long currentTime) {
+      return SECONDS.toNanos(value);
+    }
+
+    @Override
+    public long expireAfterUpdate(Integer key, Integer value,
+        long currentTime, long currentDuration) {
+      return SECONDS.toNanos(value);
+    }
+
+    @Override
+    public long expireAfterRead(Integer key, Integer value,
+        long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+  /** A ticker whose time is advanced explicitly. */
+  static final class FakeTicker implements Ticker {
+    long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long duration, TimeUnit unit) {
+      nanos += unit.toNanos(duration);
+    }
+  }
+
+  /** A listener that records the keys of the evicted entries. */
+  static final class RecordingListener implements EvictionListener<Integer, Integer> {
+    final List<Integer> evicted = new ArrayList<Integer>();
+
+    @Override
+    public void onEviction(Integer key, Integer value) {
+      evicted.add(key);
+    }
+  }
+}
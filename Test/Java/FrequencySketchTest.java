@@ -0,0 +1,196 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * A unit-test for the frequency sketch and the Window TinyLFU policy that
+ * uses it to decide whether to admit an entry.
+ */
+@Test(groups = "development")
+public final class FrequencySketchTest extends AbstractTest {
+
+  @Test
+  public void increment_once() {
+    FrequencySketch<Integer> sketch = new FrequencySketch<Integer>();
+    sketch.increment(1);
+    assertThat(sketch.frequency(1), is(1));
+  }
+
+  @Test
+  public void increment_max() {
+    FrequencySketch<Integer> sketch = new FrequencySketch<Integer>();
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(1);
+    }
+    assertThat(sketch.frequency(1), is(15));
+  }
+
+  @Test
+  public void increment_distinct() {
+    FrequencySketch<Integer> sketch = new FrequencySketch<Integer>();
+    sketch.ensureCapacity(512);
+    sketch.increment(1);
+    sketch.increment(2);
+    assertThat(sketch.frequency(1), is(1));
+    assertThat(sketch.frequency(2), is(1));
+    assertThat(sketch.frequency(3), is(0));
+  }
+
+  @Test
+  public void ensureCapacity_grows() {
+    FrequencySketch<Integer> sketch = new FrequencySketch<Integer>();
+    sketch.ensureCapacity(1000);
+    assertThat(sketch.table.length, is(1024));
+    assertThat(sketch.sampleSize, is(10 * 1024));
+  }
+
+  @Test
+  public void reset() {
+    FrequencySketch<Integer> sketch = new FrequencySketch<Integer>();
+    boolean reset = false;
+    for (int i = 1; i < 20 * sketch.table.length; i++) {
+      sketch.increment(i);
+      if (sketch.size != i) {
+        reset = true;
+        break;
+      }
+    }
+    assertThat(reset, is(true));
+    assertThat(sketch.size, is(lessThanOrEqualTo(sketch.sampleSize / 2)));
+  }
+
+  @Test
+  public void heavyHitters() {
+    FrequencySketch<Double> sketch = new FrequencySketch<Double>();
+    sketch.ensureCapacity(512);
+    for (int i = 100; i < 100000; i++) {
+      sketch.increment((double) i);
+    }
+    for (int i = 0; i < 10; i += 2) {
+      for (int j = 0; j < i; j++) {
+        sketch.increment((double) i);
+      }
+    }
+
+    // A perfect popularity count yields an array [0, 0, 2, 0, 4, 0, 6, 0, 8, 0]
+    int[] popularity = new int[10];
+    for (int i = 0; i < 10; i++) {
+      popularity[i] = sketch.frequency((double) i);
+    }
+    for (int i = 0; i < popularity.length; i++) {
+      if ((i == 0) || (i == 1) || (i == 3) || (i == 5) || (i == 7) || (i == 9)) {
+        assertThat(popularity[i], is(lessThanOrEqualTo(popularity[2])));
+      } else if (i == 2) {
+        assertThat(popularity[2], is(lessThanOrEqualTo(popularity[4])));
+      } else if (i == 4) {
+        assertThat(popularity[4], is(lessThanOrEqualTo(popularity[6])));
+      } else if (i == 6) {
+        assertThat(popularity[6], is(lessThanOrEqualTo(popularity[8])));
+      }
+    }
+  }
+
+  @Test
+  public void windowTinyLfu_rejectsUnpopularCandidate() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .policy(EvictionPolicies.windowTinyLfu())
+        .build();
+    for (int i = 0; i < 10; i++) {
+      map.put(i, i);
+    }
+    for (int i = 0; i < 10; i++) {
+      map.get(i);
+      map.get(i);
+    }
+
+    map.put(10, 10);
+    assertThat(map.containsKey(10), is(false));
+    assertThat(map.size(), is(10));
+  }
+
+  @Test
+  public void windowTinyLfu_admitsPopularCandidate() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .policy(EvictionPolicies.windowTinyLfu())
+        .build();
+    for (int i = 0; i < 10; i++) {
+      map.put(i, i);
+    }
+
+    // Build up the popularity of an absent key so that it is admitted
+    for (int i = 0; i < 5; i++) {
+      map.put(10, 10);
+      map.get(10);
+    }
+    assertThat(map.containsKey(10), is(true));
+    assertThat(map.size(), is(10));
+    assertThat(map.weightedSize(), is(10L));
+  }
+
+  @Test
+  public void windowTinyLfu_scanResistant() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(100)
+        .policy(EvictionPolicies.windowTinyLfu())
+        .build();
+    for (int i = 0; i < 100; i++) {
+      map.put(i, i);
+    }
+    for (int i = 0; i < 100; i++) {
+      map.get(i);
+    }
+    for (int i = 1000; i < 1500; i++) {
+      map.put(i, i);
+    }
+
+    int retained = 0;
+    for (int i = 0; i < 100; i++) {
+      if (map.getQuietly(i) != null) {
+        retained++;
+      }
+    }
+    assertThat(retained, is(greaterThan(80)));
+    WindowTinyLfuPolicy<Integer, Integer> policy =
+        (WindowTinyLfuPolicy<Integer, Integer>) map.policy;
+    assertThat(policy.windowWeightedSize, is(lessThan(map.capacity())));
+  }
+
+  @Test
+  public void windowTinyLfu_ascendingOrder() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(3)
+        .policy(EvictionPolicies.windowTinyLfu())
+        .build();
+    map.put(1, 1);
+    map.put(2, 2);
+    map.put(3, 3);
+    map.get(1);
+
+    assertThat(map.ascendingKeySet(), contains(2, 3, 1));
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import com.googlecode.concurrentlinkedhashmap.ExecutorTest.QueueingExecutor;
+import com.googlecode.concurrentlinkedhashmap.ExpirationTest.FakeTicker;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static com.googlecode.concurrentlinkedhashmap.IsReserializable.reserializable;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A unit-test for reloading entries after a fixed duration.
+ */
+@Test(groups = "development")
+public final class RefreshTest extends AbstractTest {
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void refreshAfterWrite_withZero() {
+    new Builder<Integer, Integer>().refreshAfterWrite(0, MINUTES);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void reloader_withNullExecutor() {
+    new Builder<Integer, Integer>().reloader(new IncrementingReloader(), null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void refreshAfterWrite_withoutReloader() {
+    new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .refreshAfterWrite(1, MINUTES)
+        .build();
+  }
+
+  @Test(dataProvider = "refreshingMap")
+  public void refresh_servesStaleValue(ConcurrentLinkedHashMap<Integer, Integer> map,
+      FakeTicker ticker, IncrementingReloader reloader, QueueingExecutor executor) {
+    map.put(1, 1);
+
+    ticker.advance(30, SECONDS);
+    assertThat(map.get(1), is(1));
+    assertThat(executor.tasks.size(), is(0));
+
+    ticker.advance(30, SECONDS);
+    assertThat(map.get(1), is(1));
+    assertThat(map.get(1), is(1));
+    assertThat(executor.tasks.size(), is(1));
+
+    executor.runAll();
+    assertThat(map.get(1), is(2));
+    assertThat(reloader.reloads.get(), is(1));
+  }
+
+  @Test(dataProvider = "refreshingMap")
+  public void refresh_discardedWhenWritten(ConcurrentLinkedHashMap<Integer, Integer> map,
+      FakeTicker ticker, IncrementingReloader reloader, QueueingExecutor executor) {
+    map.put(1, 1);
+
+    ticker.advance(1, MINUTES);
+    map.get(1);
+    map.put(1, 10);
+    executor.runAll();
+    assertThat(map.get(1), is(10));
+  }
+
+  @Test(dataProvider = "refreshingMap")
+  public void refresh_retainedWhenFailed(ConcurrentLinkedHashMap<Integer, Integer> map,
+      FakeTicker ticker, IncrementingReloader reloader, QueueingExecutor executor) {
+    map.put(1, 1);
+
+    ticker.advance(1, MINUTES);
+    reloader.fail = true;
+    map.get(1);
+    executor.runAll();
+    assertThat(map.get(1), is(1));
+
+    reloader.fail = false;
+    executor.runAll();
+    assertThat(map.get(1), is(2));
+  }
+
+  @Test(dataProvider = "builder")
+  public void serialize_withReloaderOnly(Builder<Integer, Integer> builder) {
+    ConcurrentLinkedHashMap<Integer, Integer> map = builder
+        .reloader(new IncrementingReloader(), new QueueingExecutor())
+        .build();
+    map.put(1, 1);
+    assertThat(map, is(reserializable()));
+  }
+
+  @Test(dataProvider = "builder")
+  public void serialize_withRefreshAfterWrite(Builder<Integer, Integer> builder) {
+    ConcurrentLinkedHashMap<Integer, Integer> map = builder
+        .refreshAfterWrite(1, MINUTES)
+        .reloader(new IncrementingReloader(), new QueueingExecutor())
+        .ticker(new FakeTicker())
+        .build();
+    map.put(1, 1);
+    assertThat(map, is(reserializable()));
+  }
+
+  /** Provides a map that refreshes after a minute, with its ticker, reloader and executor. */
+  @DataProvider(name = "refreshingMap")
+  public Object[][] providesRefreshingMap() {
+    FakeTicker ticker = new FakeTicker();
+    QueueingExecutor executor = new QueueingExecutor();
+    IncrementingReloader reloader = new IncrementingReloader();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(capacity())
+        .refreshAfterWrite(1, MINUTES)
+        .reloader(reloader, executor)
+        .ticker(ticker)
+        .build();
+    return new Object[][] {{ map, ticker, reloader, executor }};
+  }
+
+  /** A reloader that increments the value, or fails if requested. */
+  static final class IncrementingReloader implements Reloader<Integer, Integer>, Serializable {
+    final AtomicInteger reloads = new AtomicInteger();
+    volatile boolean fail;
+
+    @Override
+    public Integer reload(Integer key, Integer oldValue) throws Exception {
+      reloads.incrementAndGet();
+      if (fail) {
+        throw new Exception();
+      }
+      return oldValue + 1;
+    }
+
+    static final long serialVersionUID = 1;
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.googlecode.concurrentlinkedhashmap.CacheType;
+import com.googlecode.concurrentlinkedhashmap.CacheType.Policy;
+import com.googlecode.concurrentlinkedhashmap.caches.CacheFactory;
+import com.googlecode.concurrentlinkedhashmap.simulator.TraceFormat.KeyReader;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+/**
+ * A simulator that replays an access trace against the bounded caches over a
+ * sweep of capacities, reporting the hit rate curve and the throughput of each
+ * cache. A miss loads the key into the cache, as a self-populating cache
+ * would. Each replay is independent and single-threaded, so the replays run in
+ * parallel with one per core, and each streams the trace from disk.
+ * <pre>
+ * Simulator &lt;format&gt; &lt;trace file&gt; &lt;capacity,...&gt; [cache type,...]
+ * </pre>
+ * The cache types default to every bounded {@link CacheType}.
+ *
+ * @see TraceFormat
+ */
+public final class Simulator {
+  final TraceFormat format;
+  final File trace;
+  final int[] capacities;
+  final List<CacheType> caches;
+
+  public Simulator(TraceFormat format, File trace, int[] capacities, List<CacheType> caches) {
+    this.capacities = capacities.clone();
+    this.caches = caches;
+    this.format = format;
+    this.trace = trace;
+  }
+
+  /**
+   * Replays the trace against every cache type and capacity.
+   *
+   * @return the results, ordered by cache type and then by capacity
+   */
+  public List<Result> run() throws IOException, InterruptedException {
+    final int threads = Runtime.getRuntime().availableProcessors();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<Result>> futures = new ArrayList<Future<Result>>();
+      for (CacheType cache : caches) {
+        for (int capacity : capacities) {
+          futures.add(executor.submit(new Replay(cache, capacity)));
+        }
+      }
+      final List<Result> results = new ArrayList<Result>(futures.size());
+      for (Future<Result> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Replays the trace against a single cache. */
+  final class Replay implements Callable<Result> {
+    final CacheType cache;
+    final int capacity;
+
+    Replay(CacheType cache, int capacity) {
+      this.capacity = capacity;
+      this.cache = cache;
+    }
+
+    @Override
+    public Result call() throws IOException {
+      final Map<Object, Object> map = new CacheFactory()
+          .maximumCapacity(capacity)
+          .makeCache(cache);
+      final KeyReader reader = format.open(trace);
+      try {
+        long requests = 0;
+        long hits = 0;
+        final long start = System.nanoTime();
+        Object key;
+        while ((key = reader.next()) != null) {
+          if (map.get(key) == null) {
+            map.put(key, key);
+          } else {
+            hits++;
+          }
+          requests++;
+        }
+        final long elapsed = System.nanoTime() - start;
+        return new Result(cache, capacity, requests, hits, elapsed);
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /** The outcome of replaying the trace against a cache of a given capacity. */
+  public static final class Result {
+    public final CacheType cache;
+    public final int capacity;
+    public final long requests;
+    public final long hits;
+    public final long elapsedNanos;
+
+    Result(CacheType cache, int capacity, long requests, long hits, long elapsedNanos) {
+      this.elapsedNanos = elapsedNanos;
+      this.capacity = capacity;
+      this.requests = requests;
+      this.cache = cache;
+      this.hits = hits;
+    }
+
+    /** Returns the percentage of the requests that were hits. */
+    public double hitRate() {
+      return (requests == 0) ? 0.0 : (100.0 * hits) / requests;
+    }
+
+    /** Returns the number of requests replayed per second, including the trace's I/O. */
+    public double throughput() {
+      return (elapsedNanos == 0) ? 0.0 : requests / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  /**
+   * Prints a table of the hit rates and another of the throughputs, with a row
+   * per cache type and a column per capacity.
+   */
+  void report(List<Result> results) {
+    System.out.printf("Trace: %s (%s)%n", trace, format);
+    printTable(results, "Hit rate (%)", true);
+    printTable(results, "Throughput (requests/sec)", false);
+  }
+
+  void printTable(List<Result> results, String title, boolean hitRate) {
+    System.out.printf("%n%s%n%-46s", title, "Cache");
+    for (int capacity : capacities) {
+      System.out.printf("%14d", capacity);
+    }
+    System.out.println();
+
+    int i = 0;
+    for (CacheType cache : caches) {
+      System.out.printf("%-46s", cache);
+      for (int j = 0; j < capacities.length; j++, i++) {
+        final Result result = results.get(i);
+        if (hitRate) {
+          System.out.printf("%14.2f", result.hitRate());
+        } else {
+          System.out.printf("%14.0f", result.throughput());
+        }
+      }
+      System.out.println();
+    }
+  }
+
+  /** Returns the cache types that evict, as an unbounded cache always hits. */
+  static List<CacheType> boundedCaches() {
+    final List<CacheType> caches = new ArrayList<CacheType>();
+    for (CacheType cache : CacheType.values()) {
+      if (cache.policy() != Policy.UNBOUNDED) {
+        caches.add(cache);
+      }
+    }
+    return caches;
+  }
+
+  static int[] parseCapacities(String capacities) {
+    final String[] values = capacities.split(",");
+    final int[] parsed = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      parsed[i] = Integer.parseInt(values[i].trim());
+    }
+    return parsed;
+  }
+
+  static List<CacheType> parseCaches(String caches) {
+    final List<CacheType> parsed = new ArrayList<CacheType>();
+    for (String cache : caches.split(",")) {
+      parsed.add(CacheType.valueOf(cache.trim()));
+    }
+    return parsed;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 3) {
+      System.err.println("Usage: Simulator <ARC|LIRS|KEY_PER_LINE|BINARY_LONG> "
+          + "<trace file> <capacity,...> [cache type,...]");
+      System.exit(1);
+    }
+    final Simulator simulator = new Simulator(
+        TraceFormat.valueOf(args[0]),
+        new File(args[1]),
+        parseCapacities(args[2]),
+        (args.length > 3) ? parseCaches(args[3]) : boundedCaches());
+    simulator.report(simulator.run());
+  }
+
+  @Test(groups = "simulator")
+  @Parameters({"traceFormat", "traceFile", "capacities"})
+  public static void simulate(String traceFormat, String traceFile, String capacities)
+      throws IOException, InterruptedException {
+    main(new String[] { traceFormat, traceFile, capacities });
+  }
+}
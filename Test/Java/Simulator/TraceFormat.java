@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The formats of the access traces that the simulator can replay. A trace is
+ * streamed from disk as it is replayed, rather than loaded into memory, so
+ * that traces larger than the heap may be used. A file ending in
+ * <tt>.gz</tt> is decompressed while it is read.
+ *
+ * @see Simulator
+ */
+public enum TraceFormat {
+
+  /**
+   * The block traces used by the ARC paper, where each line is
+   * <tt>startingBlock numberOfBlocks ignored requestNumber</tt> and requests
+   * each block in the range.
+   */
+  ARC {
+    @Override KeyReader newReader(InputStream input) {
+      final BufferedReader reader = newLineReader(input);
+      return new KeyReader() {
+        long next;
+        long end;
+
+        @Override public Object next() throws IOException {
+          while (next == end) {
+            final String line = reader.readLine();
+            if (line == null) {
+              return null;
+            }
+            final String[] fields = line.trim().split("\\s+");
+            if (fields.length >= 2) {
+              next = Long.parseLong(fields[0]);
+              end = next + Long.parseLong(fields[1]);
+            }
+          }
+          return next++;
+        }
+        @Override public void close() throws IOException {
+          reader.close();
+        }
+      };
+    }
+  },
+
+  /**
+   * The block traces used by the LIRS paper, where each line is a block
+   * number. Lines that are not a number, such as the <tt>*</tt> separators,
+   * are skipped.
+   */
+  LIRS {
+    @Override KeyReader newReader(InputStream input) {
+      final BufferedReader reader = newLineReader(input);
+      return new KeyReader() {
+        @Override public Object next() throws IOException {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+              return Long.valueOf(line);
+            }
+          }
+          return null;
+        }
+        @Override public void close() throws IOException {
+          reader.close();
+        }
+      };
+    }
+  },
+
+  /** A text trace where each non-empty line is a key. */
+  KEY_PER_LINE {
+    @Override KeyReader newReader(InputStream input) {
+      final BufferedReader reader = newLineReader(input);
+      return new KeyReader() {
+        @Override public Object next() throws IOException {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty()) {
+              return line;
+            }
+          }
+          return null;
+        }
+        @Override public void close() throws IOException {
+          reader.close();
+        }
+      };
+    }
+  },
+
+  /** A binary trace where each key is a big-endian 64-bit long. */
+  BINARY_LONG {
+    @Override KeyReader newReader(InputStream input) {
+      final DataInputStream stream = new DataInputStream(input);
+      return new KeyReader() {
+        @Override public Object next() throws IOException {
+          try {
+            return stream.readLong();
+          } catch (EOFException e) {
+            return null;
+          }
+        }
+        @Override public void close() throws IOException {
+          stream.close();
+        }
+      };
+    }
+  };
+
+  /** A sequential reader of the keys in a trace. */
+  public interface KeyReader extends Closeable {
+
+    /**
+     * Returns the next key in the trace.
+     *
+     * @return the next key, or <tt>null</tt> if the trace has been exhausted
+     * @throws IOException if the trace could not be read
+     */
+    Object next() throws IOException;
+  }
+
+  /**
+   * Opens the trace file for reading from the beginning.
+   *
+   * @param file the trace file
+   * @return a reader of the keys in the trace
+   * @throws IOException if the file could not be opened
+   */
+  public KeyReader open(File file) throws IOException {
+    InputStream input = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    if (file.getName().endsWith(".gz")) {
+      input = new GZIPInputStream(input, 1 << 16);
+    }
+    return newReader(input);
+  }
+
+  /** Returns a reader of the keys in the stream. */
+  abstract KeyReader newReader(InputStream input);
+
+  static BufferedReader newLineReader(InputStream input) {
+    return new BufferedReader(new InputStreamReader(input), 1 << 16);
+  }
+}
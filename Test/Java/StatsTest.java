@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.Arrays;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A unit-test for the statistics recorded by the map.
+ */
+@Test(groups = "development")
+public final class StatsTest extends AbstractTest {
+
+  @Test(dataProvider = "guardedMap")
+  public void stats_whenDisabled(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.put(1, 1);
+    map.get(1);
+    map.get(2);
+    assertThat(map.stats(), is(new CacheStats(0, 0, 0, 0, 0, 0, 0)));
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void hitsAndMisses(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.put(1, 1);
+    map.get(1);
+    map.get(2);
+    map.getAll(Arrays.asList(1, 2, 3));
+
+    CacheStats stats = map.stats();
+    assertThat(stats.hitCount(), is(2L));
+    assertThat(stats.missCount(), is(3L));
+    assertThat(stats.hitRate(), is(0.4));
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void getWithLoader(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    Function<Integer, Integer> identity = new Function<Integer, Integer>() {
+      @Override public Integer apply(Integer key) {
+        return key;
+      }
+    };
+    map.get(1, identity);
+    map.get(1, identity);
+
+    CacheStats stats = map.stats();
+    assertThat(stats.hitCount(), is(1L));
+    assertThat(stats.missCount(), is(1L));
+    assertThat(stats.putCount(), is(0L));
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void puts(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.put(1, 1);
+    map.put(1, 2);
+    map.putIfAbsent(1, 3);
+    assertThat(map.stats().putCount(), is(2L));
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void evictions(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    warmUp(map, 0, capacity() + 5);
+    map.remove((int) capacity() + 4);
+
+    CacheStats stats = map.stats();
+    assertThat(stats.evictionCount(), is(5L));
+    assertThat(stats.evictionWeight(), is(5L));
+    assertThat(stats.drainCount(), is(greaterThan(0L)));
+  }
+
+  @Test
+  public void expirations() {
+    ExpirationTest.FakeTicker ticker = new ExpirationTest.FakeTicker();
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .expireAfterWrite(1, MINUTES)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+    map.put(1, 1);
+    ticker.advance(2, MINUTES);
+
+    assertThat(map.get(1), is((Integer) null));
+    CacheStats stats = map.stats();
+    assertThat(stats.missCount(), is(1L));
+    assertThat(stats.evictionCount(), is(1L));
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void bufferStats_reads(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.put(1, 1);
+    for (int i = 0; i < 100; i++) {
+      map.get(1);
+    }
+
+    BufferStats stats = map.bufferStats();
+    assertThat(stats.recordedReads(), is(100L));
+    assertThat(stats.appliedReads() + stats.pendingReads(), is(100L));
+    assertThat(stats.overwrittenReads(), is(0L));
+    assertThat(stats.readLossRate(), is(0.0));
+    assertThat(stats.drainsAfterRead(), is(greaterThan(0L)));
+    assertThat(stats.drainsAfterWrite(), is(1L));
+    assertThat(stats.lockHoldCount(), is(greaterThan(0L)));
+  }
+
+  @Test(dataProvider = "statsMap")
+  public void bufferStats_clear(ConcurrentLinkedHashMap<Integer, Integer> map) {
+    map.put(1, 1);
+    map.get(1);
+    map.clear();
+
+    BufferStats stats = map.bufferStats();
+    assertThat(stats.pendingReads(), is(0L));
+    assertThat(stats.overwrittenReads(), is(0L));
+  }
+
+  @Test
+  public void minus() {
+    CacheStats earlier = new CacheStats(1, 2, 3, 4, 5, 6, 7);
+    CacheStats later = new CacheStats(2, 4, 6, 8, 10, 12, 14);
+    assertThat(later.minus(earlier), is(earlier));
+    assertThat(earlier.minus(later), is(new CacheStats(0, 0, 0, 0, 0, 0, 0)));
+  }
+}
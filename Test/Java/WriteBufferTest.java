@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.concurrentlinkedhashmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Builder;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap.Node;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * A unit-test for the bounded write buffer and the back-pressure that the map
+ * applies when it is full.
+ */
+@Test(groups = "development")
+public final class WriteBufferTest extends AbstractTest {
+
+  @Test
+  public void drain_whenEmpty() {
+    WriteBuffer<Integer> buffer = new WriteBuffer<Integer>(4);
+    RecordingConsumer consumer = new RecordingConsumer();
+    assertThat(buffer.drainTo(consumer, Integer.MAX_VALUE), is(0));
+    assertThat(buffer.size(), is(0));
+  }
+
+  @Test
+  public void drain_inOrder() {
+    WriteBuffer<Integer> buffer = new WriteBuffer<Integer>(4);
+    for (int i = 0; i < 3; i++) {
+      assertThat(buffer.offer(i, i + 1, -i), is(true));
+    }
+    RecordingConsumer consumer = new RecordingConsumer();
+    assertThat(buffer.drainTo(consumer, Integer.MAX_VALUE), is(3));
+    assertThat(consumer.elements, contains(0, 1, 2));
+    assertThat(consumer.operations, contains(1, 2, 3));
+    assertThat(consumer.weights, contains(0, -1, -2));
+    assertThat(buffer.size(), is(0));
+  }
+
+  @Test
+  public void drain_upToLimit() {
+    WriteBuffer<Integer> buffer = new WriteBuffer<Integer>(4);
+    for (int i = 0; i < 3; i++) {
+      buffer.offer(i, 0, 0);
+    }
+    RecordingConsumer consumer = new RecordingConsumer();
+    assertThat(buffer.drainTo(consumer, 2), is(2));
+    assertThat(consumer.elements, contains(0, 1));
+    assertThat(buffer.size(), is(1));
+  }
+
+  @Test
+  public void offer_whenFull() {
+    WriteBuffer<Integer> buffer = new WriteBuffer<Integer>(3);
+    assertThat(buffer.capacity(), is(4));
+    for (int i = 0; i < 4; i++) {
+      assertThat(buffer.offer(i, 0, 0), is(true));
+    }
+    assertThat(buffer.offer(4, 0, 0), is(false));
+    assertThat(buffer.size(), is(4));
+
+    buffer.drainTo(new RecordingConsumer(), 1);
+    assertThat(buffer.offer(4, 0, 0), is(true));
+  }
+
+  @Test
+  public void afterWrite_whenFull() {
+    ConcurrentLinkedHashMap<Integer, Integer> map = new Builder<Integer, Integer>()
+        .maximumWeightedCapacity(10)
+        .build();
+    map.put(0, 0);
+    Node<Integer, Integer> node = map.data.get(0);
+    while (map.writeBuffer.offer(node, ConcurrentLinkedHashMap.UPDATE, 0)) {}
+
+    map.put(1, 2);
+    assertThat(map.get(1), is(2));
+    assertThat(map.writeBuffer.size(), is(lessThanOrEqualTo(map.writeBuffer.capacity())));
+  }
+
+  /** A consumer that records the elements and operations that it receives. */
+  static final class RecordingConsumer implements WriteBuffer.Consumer<Integer> {
+    final List<Integer> elements = new ArrayList<Integer>();
+    final List<Integer> operations = new ArrayList<Integer>();
+    final List<Integer> weights = new ArrayList<Integer>();
+
+    @Override
+    public void accept(Integer e, int operation, int weight) {
+      elements.add(e);
+      operations.add(operation);
+      weights.add(weight);
+    }
+  }
+}